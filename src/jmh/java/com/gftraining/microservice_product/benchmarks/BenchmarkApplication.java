@@ -0,0 +1,101 @@
+package com.gftraining.microservice_product.benchmarks;
+
+import com.gftraining.microservice_product.MicroserviceProductApplication;
+import com.gftraining.microservice_product.model.ProductEntity;
+import com.gftraining.microservice_product.repositories.ProductJdbcRepository;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * The application booted on a random port for the benchmarks that go through HTTP, with the outbox dispatcher off
+ * and a catalog of products rows inserted. The arguments are passed on the command line, since default properties
+ * would lose to application.yaml.
+ */
+final class BenchmarkApplication implements AutoCloseable {
+    static final int PAGE_SIZE = 20;
+
+    private final ConfigurableApplicationContext context;
+    private final int products;
+    private LoopResources clientLoops;
+
+    private BenchmarkApplication(ConfigurableApplicationContext context, int products) {
+        this.context = context;
+        this.products = products;
+    }
+
+    static BenchmarkApplication start(int products, List<String> profiles, String... args) {
+        String[] arguments = Stream.concat(Stream.of("--server.port=0", "--notifications.dispatcher-enabled=false",
+                "--spring.main.banner-mode=off"), Stream.of(args)).toArray(String[]::new);
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(MicroserviceProductApplication.class)
+                .profiles(profiles.toArray(new String[0]))
+                .run(arguments);
+
+        List<ProductEntity> catalog = new ArrayList<>(products);
+        for (long id = 1; id <= products; id++) {
+            catalog.add(new ProductEntity(id, "Producto " + id, "Otros", "descripcion del producto " + id, BigDecimal.TEN, 100));
+        }
+        context.getBean(ProductJdbcRepository.class).insertAll(catalog);
+        return new BenchmarkApplication(context, products);
+    }
+
+    static BenchmarkApplication start(int products, String... args) {
+        return start(products, List.of(), args);
+    }
+
+    <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    URI uri(String path) {
+        return URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port") + path);
+    }
+
+    /**
+     * A client for up to concurrency requests in flight at once. It runs on its own loops and pool, so its threads
+     * are not counted as serving HTTP, and they are disposed when the application is closed.
+     */
+    WebClient loadClient(int concurrency) {
+        clientLoops = LoopResources.create("load-client", 1, true);
+        ConnectionProvider connections = ConnectionProvider.builder("load-client")
+                .maxConnections(concurrency)
+                .pendingAcquireMaxCount(-1)
+                .build();
+        return WebClient.builder()
+                .baseUrl(uri("").toString())
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connections).runOn(clientLoops)))
+                .build();
+    }
+
+    /**
+     * Reads concurrency pages of the catalog all at once with the load client and returns the bytes received, once
+     * the slowest of them has answered.
+     */
+    long readPages(WebClient client, int concurrency) {
+        return Flux.range(0, concurrency)
+                .flatMap(i -> client.get()
+                        .uri("/products?after={after}&limit={limit}", i % (products - PAGE_SIZE), PAGE_SIZE)
+                        .retrieve()
+                        .bodyToMono(byte[].class), concurrency)
+                .map(body -> body.length)
+                .reduce(0L, Long::sum)
+                .block();
+    }
+
+    @Override
+    public void close() {
+        context.close();
+        if (clientLoops != null) clientLoops.dispose();
+    }
+}
@@ -0,0 +1,101 @@
+package com.gftraining.microservice_product.benchmarks;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gftraining.microservice_product.configuration.CatalogImportConfig;
+import com.gftraining.microservice_product.configuration.CategoriesConfig;
+import com.gftraining.microservice_product.model.CatalogImportResultDTO;
+import com.gftraining.microservice_product.repositories.ProductJdbcRepository;
+import com.gftraining.microservice_product.services.CatalogImportService;
+import com.gftraining.microservice_product.services.CatalogVersion;
+import com.gftraining.microservice_product.services.ProductPricingService;
+import com.gftraining.microservice_product.services.ProductSearchService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import liquibase.integration.spring.SpringLiquibase;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The whole JSON import into an in-memory H2 database created by the Liquibase changelog of the application: the
+ * bundled data.json scaled up by a factor replaces the catalog in one transaction, as importFromJson runs it, and the
+ * search index is rebuilt.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx1g")
+public class CatalogImportBenchmark {
+
+    @Param({"1000"})
+    private int scale;
+
+    private Path catalog;
+    private CatalogImportService catalogImportService;
+    private TransactionTemplate transactionTemplate;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:import;DB_CLOSE_DELAY=-1", "sa", "");
+        SpringLiquibase liquibase = new SpringLiquibase();
+        liquibase.setDataSource(dataSource);
+        liquibase.setChangeLog("classpath:db/migrations/db.changelog-root.yaml");
+        liquibase.setResourceLoader(new DefaultResourceLoader());
+        liquibase.afterPropertiesSet();
+
+        CategoriesConfig categoriesConfig = PricedCatalog.categories();
+        ObjectMapper objectMapper = new ObjectMapper();
+        ProductJdbcRepository productJdbcRepository = new ProductJdbcRepository(new JdbcTemplate(dataSource),
+                new ConcurrentMapCacheManager("products"));
+        catalogImportService = new CatalogImportService(productJdbcRepository, new ProductPricingService(categoriesConfig),
+                new ProductSearchService(productJdbcRepository), new CatalogImportConfig(), objectMapper,
+                new CatalogVersion(), null, new SimpleMeterRegistry());
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        JsonNode products;
+        try (InputStream data = getClass().getResourceAsStream("/data.json")) {
+            products = objectMapper.readTree(data);
+        }
+        catalog = Files.createTempFile("catalog", ".json");
+        try (OutputStream output = Files.newOutputStream(catalog);
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(output)) {
+            generator.writeStartArray();
+            for (int i = 0; i < scale; i++) {
+                for (JsonNode product : products) {
+                    generator.writeTree(product);
+                }
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(catalog);
+    }
+
+    @Benchmark
+    public CatalogImportResultDTO importFromJson() {
+        return transactionTemplate.execute(status -> {
+            try {
+                return catalogImportService.importFromJson(catalog.toString());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+}
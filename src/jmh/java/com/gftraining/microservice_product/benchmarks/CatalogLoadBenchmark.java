@@ -0,0 +1,116 @@
+package com.gftraining.microservice_product.benchmarks;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.gftraining.microservice_product.configuration.CatalogImportConfig;
+import com.gftraining.microservice_product.model.ProductEntity;
+import com.gftraining.microservice_product.services.CatalogImportService;
+import com.gftraining.microservice_product.services.CatalogVersion;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Parses the bundled data.json scaled up by a factor, reading it as the catalog import used to (a buffered file
+ * stream) and through the memory-mapped reader, plain and gzip compressed. The database is left out so only the
+ * reading and parsing are compared.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx512m")
+public class CatalogLoadBenchmark {
+
+    @Param({"10000"})
+    private int scale;
+
+    private Path catalog;
+    private Path gzipCatalog;
+    private ObjectReader productReader;
+    private CatalogImportService catalogImportService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        productReader = objectMapper.readerFor(ProductEntity.class);
+        catalogImportService = new CatalogImportService(null, null, null, new CatalogImportConfig(), objectMapper,
+                new CatalogVersion(), null, new SimpleMeterRegistry());
+
+        JsonNode products;
+        try (InputStream data = getClass().getResourceAsStream("/data.json")) {
+            products = objectMapper.readTree(data);
+        }
+
+        catalog = Files.createTempFile("catalog", ".json");
+        gzipCatalog = Files.createTempFile("catalog", ".json.gz");
+        try (OutputStream plain = Files.newOutputStream(catalog);
+             OutputStream gzip = new GZIPOutputStream(Files.newOutputStream(gzipCatalog))) {
+            writeScaled(objectMapper, products, plain);
+            writeScaled(objectMapper, products, gzip);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(catalog);
+        Files.deleteIfExists(gzipCatalog);
+    }
+
+    @Benchmark
+    public long fileStream() throws IOException {
+        try (MappingIterator<ProductEntity> products = productReader.readValues(new File(catalog.toString()))) {
+            return count(products);
+        }
+    }
+
+    @Benchmark
+    public long mappedFile() throws IOException {
+        try (InputStream input = catalogImportService.openCatalog(catalog);
+             MappingIterator<ProductEntity> products = productReader.readValues(input)) {
+            return count(products);
+        }
+    }
+
+    @Benchmark
+    public long mappedGzipFile() throws IOException {
+        try (InputStream input = catalogImportService.openCatalog(gzipCatalog);
+             MappingIterator<ProductEntity> products = productReader.readValues(input)) {
+            return count(products);
+        }
+    }
+
+    private static long count(MappingIterator<ProductEntity> products) throws IOException {
+        long rows = 0;
+        while (products.hasNextValue()) {
+            products.nextValue();
+            rows++;
+        }
+        return rows;
+    }
+
+    private void writeScaled(ObjectMapper objectMapper, JsonNode products, OutputStream output) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(output)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartArray();
+            for (int i = 0; i < scale; i++) {
+                for (JsonNode product : products) {
+                    generator.writeTree(product);
+                }
+            }
+            generator.writeEndArray();
+        }
+    }
+}
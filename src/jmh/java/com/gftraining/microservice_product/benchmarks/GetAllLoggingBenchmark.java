@@ -0,0 +1,70 @@
+package com.gftraining.microservice_product.benchmarks;
+
+import com.gftraining.microservice_product.services.ProductPricingService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /products over a catalog of products rows with the logging of logback-spring.xml in two modes. verbose writes
+ * every event to the console as it happens, with Spring MVC at DEBUG and a line per product priced, as the read path
+ * used to log; summary is the default, one summary event per request through the async appender. The response cache
+ * is disabled and the final price table cleared before every request, so every product is priced and serialized
+ * again as it was before either was kept.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = "-Xmx1g")
+public class GetAllLoggingBenchmark {
+
+    @Param({"verbose", "summary"})
+    private String logging;
+
+    @Param({"10000"})
+    private int products;
+
+    private BenchmarkApplication application;
+    private ProductPricingService pricingService;
+    private HttpClient client;
+    private HttpRequest getAll;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<String> args = new ArrayList<>(List.of("--logging.config=classpath:logback-spring.xml",
+                "--response-cache.enabled=false"));
+        if ("verbose".equals(logging)) {
+            args.addAll(List.of("--spring.profiles.active=sync-logging", "--logging.level.org.springframework.web=DEBUG",
+                    "--logging.level.com.gftraining.microservice_product=DEBUG",
+                    "--logging.level.com.gftraining.microservice_product.services.ProductPricingService=TRACE"));
+        }
+        application = BenchmarkApplication.start(products, args.toArray(new String[0]));
+        pricingService = application.getBean(ProductPricingService.class);
+
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        getAll = HttpRequest.newBuilder(application.uri("/products")).GET().build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        application.close();
+    }
+
+    @Setup(Level.Invocation)
+    public void clearPrices() {
+        pricingService.clear();
+    }
+
+    @Benchmark
+    public int getAll() throws IOException, InterruptedException {
+        return client.send(getAll, HttpResponse.BodyHandlers.ofByteArray()).body().length;
+    }
+}
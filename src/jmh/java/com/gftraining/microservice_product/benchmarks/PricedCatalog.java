@@ -0,0 +1,40 @@
+package com.gftraining.microservice_product.benchmarks;
+
+import com.gftraining.microservice_product.configuration.CategoriesConfig;
+import com.gftraining.microservice_product.model.ProductEntity;
+import com.gftraining.microservice_product.services.ProductPricingService;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A catalog spread over every category of the application, with the discounts of application.yaml and the final
+ * price of every product already in the price table, for the benchmarks that price products without the context.
+ */
+final class PricedCatalog {
+    private static final String[] CATEGORIES = {"Juguetes", "Libros", "Deportes", "Comida", "Ropa", "Otros"};
+
+    final CategoriesConfig categoriesConfig = categories();
+    final ProductPricingService pricingService;
+    final List<ProductEntity> products;
+
+    PricedCatalog(int size) {
+        pricingService = new ProductPricingService(categoriesConfig);
+
+        products = new ArrayList<>(size);
+        for (long id = 1; id <= size; id++) {
+            ProductEntity product = new ProductEntity(id, "Product " + id, CATEGORIES[(int) (id % CATEGORIES.length)],
+                    "description of product " + id, BigDecimal.valueOf(id * 137 % 250000, 2), 10);
+            products.add(product);
+            pricingService.updateFinalPrice(product);
+        }
+    }
+
+    static CategoriesConfig categories() {
+        CategoriesConfig categoriesConfig = new CategoriesConfig();
+        categoriesConfig.setCategories(Map.of("Juguetes", 20, "Libros", 15, "Deportes", 5, "Comida", 25, "Ropa", 35, "Otros", 0));
+        return categoriesConfig;
+    }
+}
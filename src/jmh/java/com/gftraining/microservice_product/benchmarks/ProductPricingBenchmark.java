@@ -0,0 +1,47 @@
+package com.gftraining.microservice_product.benchmarks;
+
+import com.gftraining.microservice_product.model.ProductEntity;
+import com.gftraining.microservice_product.services.ProductPricingService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares calculating the final price of a page of products on every read with reading it from the price table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductPricingBenchmark {
+    @Param({"1000"})
+    private int products;
+
+    private ProductPricingService pricingService;
+    private List<ProductEntity> catalog;
+
+    @Setup
+    public void setUp() {
+        PricedCatalog pricedCatalog = new PricedCatalog(products);
+        pricingService = pricedCatalog.pricingService;
+        catalog = pricedCatalog.products;
+    }
+
+    @Benchmark
+    public void calculatePerRead(Blackhole blackhole) {
+        for (ProductEntity product : catalog) {
+            blackhole.consume(pricingService.calculateFinalPrice(product));
+        }
+    }
+
+    @Benchmark
+    public void priceTable(Blackhole blackhole) {
+        for (ProductEntity product : catalog) {
+            blackhole.consume(pricingService.getFinalPrice(product));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.gftraining.microservice_product.benchmarks;
+
+import com.gftraining.microservice_product.model.ProductEntity;
+import com.gftraining.microservice_product.services.ProductSearchService;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searches a catalog of generated products whose words follow a skewed distribution, so some terms are in many
+ * products and most in a few, as in real names and descriptions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx3g")
+public class ProductSearchBenchmark {
+    private static final String[] SYLLABLES = {"ba", "ce", "di", "fo", "gu", "la", "me", "ni", "po", "ru", "sa", "te", "vi", "zo"};
+    private static final int WORDS = 20000;
+
+    @Param({"1000000"})
+    private int products;
+
+    private ProductSearchService searchService;
+    private String[] vocabulary;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        vocabulary = new String[WORDS];
+        for (int i = 0; i < WORDS; i++) {
+            vocabulary[i] = word(i);
+        }
+
+        searchService = new ProductSearchService(null);
+        for (long id = 1; id <= products; id++) {
+            searchService.index(new ProductEntity(id, words(random, 2), "Otros", words(random, 6), BigDecimal.TEN, 1));
+        }
+    }
+
+    @Benchmark
+    public List<Long> rareKeyword() {
+        return searchService.search(vocabulary[WORDS / 2], false, 10);
+    }
+
+    @Benchmark
+    public List<Long> commonKeyword() {
+        return searchService.search(vocabulary[10], false, 10);
+    }
+
+    @Benchmark
+    public List<Long> twoKeywords() {
+        return searchService.search(vocabulary[10] + " " + vocabulary[500], false, 10);
+    }
+
+    @Benchmark
+    public List<Long> typeAhead() {
+        return searchService.search(vocabulary[10] + " " + vocabulary[500].substring(0, 4), true, 10);
+    }
+
+    private String words(Random random, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            // Cubing a uniform number skews the picks towards the first words of the vocabulary.
+            double skewed = random.nextDouble();
+            text.append(vocabulary[(int) (skewed * skewed * skewed * WORDS)]).append(' ');
+        }
+        return text.toString();
+    }
+
+    private static String word(int index) {
+        StringBuilder word = new StringBuilder();
+        do {
+            word.append(SYLLABLES[index % SYLLABLES.length]);
+            index /= SYLLABLES.length;
+        } while (index > 0);
+        return word.append('x').toString();
+    }
+}
@@ -0,0 +1,60 @@
+package com.gftraining.microservice_product.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Boots the application with the servlet stack (Spring MVC over JPA on Tomcat), on Tomcat's pool of platform threads
+ * or with virtual-threads.enabled, or the reactive one (WebFlux over R2DBC on Netty) and sends bursts of concurrent
+ * page reads to it. Every operation is a burst of concurrency requests all in flight at once, so its time is how long
+ * the slowest of them waited. At the end of the trial the peak of threads of the JVM and the threads serving HTTP are
+ * printed, to compare what each stack needs to hold that concurrency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = "-Xmx1g")
+public class ReadPathBenchmark {
+    private static final int PRODUCTS = 1000;
+
+    @Param({"servlet", "virtual", "reactive"})
+    private String stack;
+
+    @Param({"1000", "2000"})
+    private int concurrency;
+
+    private BenchmarkApplication application;
+    private WebClient client;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        application = BenchmarkApplication.start(PRODUCTS, "reactive".equals(stack) ? List.of("reactive") : List.of(),
+                "--virtual-threads.enabled=" + "virtual".equals(stack),
+                "--logging.level.root=WARN", "--logging.level.org.springframework.web=WARN");
+        client = application.loadClient(concurrency);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long httpThreads = Thread.getAllStackTraces().keySet().stream()
+                .map(Thread::getName)
+                .filter(name -> name.startsWith("http-nio") || name.startsWith("reactor-http"))
+                .count();
+        System.out.printf("%n%s stack: %d peak JVM threads, %d threads serving HTTP%n", stack, threads.getPeakThreadCount(), httpThreads);
+
+        application.close();
+    }
+
+    @Benchmark
+    public long burst() {
+        return application.readPages(client, concurrency);
+    }
+}
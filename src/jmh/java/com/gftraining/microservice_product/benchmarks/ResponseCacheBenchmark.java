@@ -0,0 +1,67 @@
+package com.gftraining.microservice_product.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /products over an unchanged catalog of products rows, with the response cache disabled (the list is read,
+ * priced and serialized on every request) and enabled, asking for the body as is and gzip compressed, and polling it
+ * with the ETag of the last response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = "-Xmx1g")
+public class ResponseCacheBenchmark {
+
+    @Param({"false", "true"})
+    private boolean cache;
+
+    @Param({"identity", "gzip"})
+    private String encoding;
+
+    @Param({"10000"})
+    private int products;
+
+    private BenchmarkApplication application;
+    private HttpClient client;
+    private HttpRequest getAll;
+    private HttpRequest getAllIfNoneMatch;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        application = BenchmarkApplication.start(products, "--response-cache.enabled=" + cache);
+
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        getAll = HttpRequest.newBuilder(application.uri("/products"))
+                .header("Accept-Encoding", encoding)
+                .GET().build();
+        String eTag = client.send(getAll, HttpResponse.BodyHandlers.discarding()).headers().firstValue("ETag").orElseThrow();
+        getAllIfNoneMatch = HttpRequest.newBuilder(getAll.uri())
+                .header("Accept-Encoding", encoding)
+                .header("If-None-Match", eTag)
+                .GET().build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        application.close();
+    }
+
+    @Benchmark
+    public int getAll() throws IOException, InterruptedException {
+        return client.send(getAll, HttpResponse.BodyHandlers.ofByteArray()).body().length;
+    }
+
+    @Benchmark
+    public int getAllNotModified() throws IOException, InterruptedException {
+        return client.send(getAllIfNoneMatch, HttpResponse.BodyHandlers.ofByteArray()).statusCode();
+    }
+}
@@ -0,0 +1,100 @@
+package com.gftraining.microservice_product.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gftraining.microservice_product.mappers.ProductMapper;
+import com.gftraining.microservice_product.model.CartProductDTO;
+import com.gftraining.microservice_product.model.ProductDTO;
+import com.gftraining.microservice_product.model.ProductEntity;
+import com.gftraining.microservice_product.model.ResponseHandler;
+import com.gftraining.microservice_product.repositories.ProductRepository;
+import com.gftraining.microservice_product.services.CatalogVersion;
+import com.gftraining.microservice_product.services.ProductService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mapstruct.factory.Mappers;
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * The in-memory work of the product endpoints, without HTTP or the database: pricing a list of products as
+ * ProductService returns it (its repository is a mock answering findAll with the list), mapping a ProductDTO to a
+ * ProductEntity and a CartProductDTO with the generated ProductMapper and, as a baseline, with the ModelMapper the
+ * application used before, writing a list of products as JSON and building and writing the body of ResponseHandler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServiceHotPathsBenchmark {
+    @Param({"1000"})
+    private int products;
+
+    private ProductService productService;
+    private ProductMapper productMapper;
+    private ModelMapper modelMapper;
+    private ObjectMapper objectMapper;
+    private List<ProductEntity> catalog;
+    private ProductDTO productDTO;
+
+    @Setup
+    public void setUp() {
+        PricedCatalog pricedCatalog = new PricedCatalog(products);
+        catalog = pricedCatalog.products;
+
+        ProductRepository productRepository = mock(ProductRepository.class);
+        when(productRepository.findAll()).thenReturn(catalog);
+        productMapper = Mappers.getMapper(ProductMapper.class);
+        modelMapper = new ModelMapper();
+        objectMapper = new ObjectMapper();
+        productService = new ProductService(productRepository, pricedCatalog.categoriesConfig, productMapper, null,
+                pricedCatalog.pricingService, null, null, null, null, null, new CatalogVersion(), new SimpleMeterRegistry());
+        productDTO = new ProductDTO("Pelota", "Juguetes", "pelota de futbol", new BigDecimal("19.99"), 24);
+    }
+
+    @Benchmark
+    public List<ProductEntity> pricedProducts() {
+        return productService.getAllProducts();
+    }
+
+    @Benchmark
+    public ProductEntity mapProductDTO() {
+        return productMapper.toEntity(productDTO);
+    }
+
+    @Benchmark
+    public ProductEntity mapProductDTOModelMapper() {
+        return modelMapper.map(productDTO, ProductEntity.class);
+    }
+
+    @Benchmark
+    public CartProductDTO mapCartProduct() {
+        return productMapper.toCartProduct(1L, productDTO);
+    }
+
+    @Benchmark
+    public CartProductDTO mapCartProductModelMapper() {
+        CartProductDTO cartProduct = modelMapper.map(productDTO, CartProductDTO.class);
+        cartProduct.setId(1L);
+        return cartProduct;
+    }
+
+    @Benchmark
+    public byte[] productsToJson() throws IOException {
+        return objectMapper.writeValueAsBytes(catalog);
+    }
+
+    @Benchmark
+    public byte[] responseHandler() throws IOException {
+        return objectMapper.writeValueAsBytes(ResponseHandler.generateResponse("Product updated", HttpStatus.OK, 1L).getBody());
+    }
+}
@@ -0,0 +1,355 @@
+package com.gftraining.microservice_product.loadtest;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.gftraining.microservice_product.MicroserviceProductApplication;
+import com.gftraining.microservice_product.model.ProductDTO;
+import com.gftraining.microservice_product.repositories.ProductJdbcRepository;
+import com.gftraining.microservice_product.services.CatalogImportService;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.any;
+import static com.github.tomakehurst.wiremock.client.WireMock.anyUrl;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+
+/**
+ * Boots the application on in-memory H2 with a synthetic catalog of --products rows, made from the products of
+ * data.json and loaded through the JSON import, and has --concurrency clients drive a mix of the product endpoints
+ * over HTTP for --warmup and then --duration. WireMock answers the calls to the cart and user services, which the
+ * notification dispatcher makes as it would in production. With --virtual-threads=true the application serves the
+ * requests on virtual threads (see VirtualThreadsConfig) instead of Tomcat's pool of platform threads. The clients
+ * always run on virtual threads, so thousands of them cost the JVM under test no platform threads.
+ * <p>
+ * Every client sends its next request when the previous one is answered, so a stall delays the requests that would
+ * have been sent meanwhile instead of showing in their latency. Throughput and the p50, p99 and p999 latencies of
+ * every endpoint, and the hits and misses of the product list response cache, are printed and written as JSON to
+ * --result-file.
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec@load-test -Dload-test.args="--products=10000 --concurrency=32 --duration=60s"
+ * mvn -Pbenchmark test-compile exec:exec@load-test -Dload-test.args="--concurrency=4000 --virtual-threads=true"
+ * </pre>
+ */
+public class ProductLoadTest {
+    private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final int products;
+    private final int concurrency;
+    private final boolean virtualThreads;
+    private final Duration warmup;
+    private final Duration duration;
+    private final long seed;
+    private final Path resultFile;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final Map<Operation, Recorder> recorders = new LinkedHashMap<>();
+    private final Map<Operation, LongAdder> errors = new LinkedHashMap<>();
+    private final List<Long> ids = new ArrayList<>();
+    private final Map<Long, String> names = new HashMap<>();
+    private final ConcurrentHashMap.KeySetView<Long, Boolean> deleted = ConcurrentHashMap.newKeySet();
+    private volatile boolean recording;
+    private String baseUrl;
+    private MeterRegistry meterRegistry;
+
+    ProductLoadTest(SimpleCommandLinePropertySource args) {
+        products = Integer.parseInt(property(args, "products", "10000"));
+        concurrency = Integer.parseInt(property(args, "concurrency", "32"));
+        virtualThreads = Boolean.parseBoolean(property(args, "virtual-threads", "false"));
+        warmup = DurationStyle.detectAndParse(property(args, "warmup", "10s"));
+        duration = DurationStyle.detectAndParse(property(args, "duration", "30s"));
+        seed = Long.parseLong(property(args, "seed", "42"));
+        resultFile = Paths.get(property(args, "result-file", "target/load-test-result.json"));
+
+        for (Operation operation : Operation.values()) {
+            recorders.put(operation, new Recorder(MAX_LATENCY_NANOS, 3));
+            errors.put(operation, new LongAdder());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new ProductLoadTest(new SimpleCommandLinePropertySource(args)).run();
+    }
+
+    void run() throws Exception {
+        WireMockServer downstream = new WireMockServer(options().dynamicPort().disableRequestJournal());
+        downstream.start();
+        downstream.stubFor(any(anyUrl()).willReturn(aResponse().withStatus(200)));
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(MicroserviceProductApplication.class)
+                .run("--server.port=0", "--spring.main.banner-mode=off",
+                        "--services-url.cart-url=" + downstream.baseUrl(), "--services-url.user-url=" + downstream.baseUrl(),
+                        "--virtual-threads.enabled=" + virtualThreads,
+                        "--logging.level.root=WARN", "--logging.level.org.springframework.web=WARN",
+                        "--logging.level.tomcat=WARN", "--logging.level.com.gftraining=WARN");
+        try {
+            baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/products";
+            meterRegistry = context.getBean(MeterRegistry.class);
+            loadCatalog(context);
+
+            ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor();
+            long end = System.nanoTime() + warmup.toNanos() + duration.toNanos();
+            for (int i = 0; i < concurrency; i++) {
+                clients.execute(() -> drive(end));
+            }
+
+            Thread.sleep(warmup.toMillis());
+            recorders.values().forEach(Recorder::reset);
+            errors.values().forEach(LongAdder::reset);
+            recording = true;
+            long start = System.nanoTime();
+            double hits = responseCacheGets("hit");
+            double misses = responseCacheGets("miss");
+
+            clients.shutdown();
+            clients.awaitTermination(duration.toMillis() + MAX_LATENCY_NANOS / 1_000_000, TimeUnit.MILLISECONDS);
+            report(Duration.ofNanos(System.nanoTime() - start), responseCacheGets("hit") - hits,
+                    responseCacheGets("miss") - misses);
+        } finally {
+            context.close();
+            downstream.stop();
+        }
+    }
+
+    /**
+     * Writes products rows shaped like the ones of data.json, cycling through them with a numbered name and a
+     * random price and stock, and imports them.
+     */
+    private void loadCatalog(ConfigurableApplicationContext context) throws IOException {
+        JsonNode templates;
+        try (InputStream data = getClass().getResourceAsStream("/data.json")) {
+            templates = objectMapper.readTree(data);
+        }
+
+        Random random = new Random(seed);
+        Path catalog = Files.createTempFile("load-test-catalog", ".json");
+        try (OutputStream output = Files.newOutputStream(catalog);
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(output)) {
+            generator.writeStartArray();
+            for (int i = 0; i < products; i++) {
+                JsonNode template = templates.get(i % templates.size());
+                String suffix = " " + (i / templates.size());
+                String name = template.get("name").asText();
+                generator.writeStartObject();
+                generator.writeStringField("name", name.substring(0, Math.min(name.length(), 50 - suffix.length())) + suffix);
+                generator.writeStringField("category", template.get("category").asText());
+                generator.writeStringField("description", template.get("description").asText());
+                generator.writeNumberField("price", BigDecimal.valueOf(1 + random.nextInt(100000), 2));
+                generator.writeNumberField("stock", 1000 + random.nextInt(9000));
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+
+        try {
+            context.getBean(CatalogImportService.class).importFromJson(catalog.toString());
+        } finally {
+            Files.deleteIfExists(catalog);
+        }
+        context.getBean(ProductJdbcRepository.class).forEach(product -> {
+            ids.add(product.getId());
+            names.put(product.getId(), product.getName());
+        });
+        System.out.printf("Loaded %d products%n", ids.size());
+    }
+
+    private void drive(long end) {
+        while (System.nanoTime() < end) {
+            Operation operation = Operation.pick(ThreadLocalRandom.current().nextInt(100));
+            HttpRequest request = request(operation);
+            long start = System.nanoTime();
+            int status;
+            try {
+                status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            } catch (IOException e) {
+                status = -1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (!recording) continue;
+
+            recorders.get(operation).recordValue(Math.min(System.nanoTime() - start, MAX_LATENCY_NANOS));
+            if (status < 200 || status >= 300) errors.get(operation).increment();
+        }
+    }
+
+    private HttpRequest request(Operation operation) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        HttpRequest.Builder request = HttpRequest.newBuilder().timeout(Duration.ofSeconds(30));
+        switch (operation) {
+            case GET_ALL:
+                return request.uri(URI.create(baseUrl)).GET().build();
+            case GET_BY_ID:
+                return request.uri(URI.create(baseUrl + "/id/" + liveId())).GET().build();
+            case GET_BY_NAME:
+                String name = names.get(liveId());
+                return request.uri(URI.create(baseUrl + "/name/" + URLEncoder.encode(name, StandardCharsets.UTF_8).replace("+", "%20")))
+                        .GET().build();
+            case UPDATE_STOCK:
+                return json(request.uri(URI.create(baseUrl + "/updateStock/" + liveId())), "PUT", "1");
+            case PUT:
+                // Keeps the name, so the product is still found by it
+                long putId = liveId();
+                ProductDTO product = new ProductDTO(names.get(putId), "Otros", "producto actualizado",
+                        BigDecimal.valueOf(1 + random.nextInt(100000), 2), 1000 + random.nextInt(9000));
+                return json(request.uri(URI.create(baseUrl + "/" + putId)), "PUT", write(product));
+            case DELETE:
+                long id = liveId();
+                deleted.add(id);
+                return request.uri(URI.create(baseUrl + "/" + id)).DELETE().build();
+            default:
+                throw new IllegalStateException("Unknown operation " + operation);
+        }
+    }
+
+    private static HttpRequest json(HttpRequest.Builder request, String method, String body) {
+        return request.header("Content-Type", "application/json")
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private long liveId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long id;
+        do {
+            id = ids.get(random.nextInt(ids.size()));
+        } while (deleted.contains(id) && deleted.size() < ids.size());
+        return id;
+    }
+
+    private String write(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the gets of the product list response cache with the result given, 0 when it is not registered.
+     */
+    private double responseCacheGets(String result) {
+        FunctionCounter gets = meterRegistry.find("cache.gets").tags("cache", "product.responses", "result", result)
+                .functionCounter();
+        return gets == null ? 0 : gets.count();
+    }
+
+    private void report(Duration elapsed, double responseCacheHits, double responseCacheMisses) throws IOException {
+        double seconds = elapsed.toNanos() / 1e9;
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        System.out.printf("%n%-13s %10s %10s %8s %10s %10s %10s %10s%n",
+                "endpoint", "requests", "req/s", "errors", "p50 ms", "p99 ms", "p999 ms", "max ms");
+
+        for (Operation operation : Operation.values()) {
+            Histogram histogram = recorders.get(operation).getIntervalHistogram();
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("requests", histogram.getTotalCount());
+            result.put("throughput", histogram.getTotalCount() / seconds);
+            result.put("errors", errors.get(operation).sum());
+            result.put("p50", millis(histogram.getValueAtPercentile(50)));
+            result.put("p99", millis(histogram.getValueAtPercentile(99)));
+            result.put("p999", millis(histogram.getValueAtPercentile(99.9)));
+            result.put("max", millis(histogram.getMaxValue()));
+            endpoints.put(operation.name(), result);
+
+            System.out.printf("%-13s %10d %10.1f %8d %10.2f %10.2f %10.2f %10.2f%n", operation, histogram.getTotalCount(),
+                    result.get("throughput"), errors.get(operation).sum(), result.get("p50"), result.get("p99"),
+                    result.get("p999"), result.get("max"));
+        }
+
+        double responseCacheGets = responseCacheHits + responseCacheMisses;
+        double hitRate = responseCacheGets == 0 ? 0 : responseCacheHits / responseCacheGets;
+        Map<String, Object> responseCache = new LinkedHashMap<>();
+        responseCache.put("hits", (long) responseCacheHits);
+        responseCache.put("misses", (long) responseCacheMisses);
+        responseCache.put("hitRate", hitRate);
+        System.out.printf("%nresponse cache: %d hits, %d misses, %.1f%% hit rate%n", (long) responseCacheHits,
+                (long) responseCacheMisses, hitRate * 100);
+
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("products", products);
+        config.put("concurrency", concurrency);
+        config.put("virtualThreads", virtualThreads);
+        config.put("warmup", warmup.toString());
+        config.put("duration", duration.toString());
+        config.put("seed", seed);
+        Map<String, Object> results = new LinkedHashMap<>();
+        results.put("config", config);
+        results.put("seconds", seconds);
+        results.put("endpoints", endpoints);
+        results.put("responseCache", responseCache);
+
+        if (resultFile.getParent() != null) Files.createDirectories(resultFile.getParent());
+        objectMapper.enable(SerializationFeature.INDENT_OUTPUT).writeValue(resultFile.toFile(), results);
+        System.out.printf("%nResults written to %s%n", resultFile.toAbsolutePath());
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static String property(SimpleCommandLinePropertySource args, String name, String defaultValue) {
+        String value = args.getProperty(name);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * The endpoints driven, with the percentage of the requests that go to each.
+     */
+    enum Operation {
+        GET_ALL(2), GET_BY_ID(40), GET_BY_NAME(25), UPDATE_STOCK(18), PUT(10), DELETE(5);
+
+        private final int weight;
+
+        Operation(int weight) {
+            this.weight = weight;
+        }
+
+        static Operation pick(int percentile) {
+            int cumulative = 0;
+            for (Operation operation : values()) {
+                cumulative += operation.weight;
+                if (percentile < cumulative) return operation;
+            }
+            return GET_BY_ID;
+        }
+    }
+}
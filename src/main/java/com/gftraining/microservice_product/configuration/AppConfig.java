@@ -1,13 +1,41 @@
 package com.gftraining.microservice_product.configuration;
 
-import org.modelmapper.ModelMapper;
+import io.netty.channel.ChannelOption;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
 @Configuration
 public class AppConfig {
+    /**
+     * Pool shared by every call to the cart and user services. Its metrics are published under
+     * reactor.netty.connection.provider.* with name "downstream".
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider downstreamConnectionProvider(WebClientConfig webClientConfig) {
+        return ConnectionProvider.builder("downstream")
+                .maxConnections(webClientConfig.getMaxConnectionsPerHost())
+                .pendingAcquireMaxCount(webClientConfig.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(webClientConfig.getPendingAcquireTimeout())
+                .maxIdleTime(webClientConfig.getMaxIdleTime())
+                .maxLifeTime(webClientConfig.getMaxLifeTime())
+                .evictInBackground(webClientConfig.getEvictInBackground())
+                .metrics(true)
+                .build();
+    }
+
     @Bean
-    public ModelMapper modelMapper() {
-        return new ModelMapper();
+    public WebClient webClient(WebClient.Builder webClientBuilder, ConnectionProvider downstreamConnectionProvider,
+                               WebClientConfig webClientConfig) {
+        HttpClient httpClient = HttpClient.create(downstreamConnectionProvider)
+                .keepAlive(true)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) webClientConfig.getConnectTimeout().toMillis())
+                .responseTimeout(webClientConfig.getResponseTimeout());
+
+        return webClientBuilder.clientConnector(new ReactorClientHttpConnector(httpClient)).build();
     }
 }
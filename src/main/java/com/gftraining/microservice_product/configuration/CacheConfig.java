@@ -0,0 +1,32 @@
+package com.gftraining.microservice_product.configuration;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableCaching
+public class CacheConfig {
+    public static final String PRODUCTS_CACHE = "products";
+
+    /**
+     * Wraps the cache manager Spring Boot configures so that, inside a transaction, puts and evictions wait for the
+     * commit. Evicting before it would let a concurrent read cache the row as it was before the transaction until
+     * the entry expires.
+     */
+    @Bean
+    public static BeanPostProcessor transactionAwareCacheManager() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof CacheManager && !(bean instanceof TransactionAwareCacheManagerProxy)) {
+                    return new TransactionAwareCacheManagerProxy((CacheManager) bean);
+                }
+                return bean;
+            }
+        };
+    }
+}
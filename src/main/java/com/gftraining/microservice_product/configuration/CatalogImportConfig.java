@@ -0,0 +1,15 @@
+package com.gftraining.microservice_product.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "catalog-import")
+public class CatalogImportConfig {
+    private int batchSize = 1000;
+    private int pipelineDepth = 4;
+    private DataSize mappedRegionSize = DataSize.ofMegabytes(64);
+}
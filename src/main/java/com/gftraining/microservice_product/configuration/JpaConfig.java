@@ -0,0 +1,17 @@
+package com.gftraining.microservice_product.configuration;
+
+import com.gftraining.microservice_product.repositories.ProductReactiveRepository;
+import com.gftraining.microservice_product.repositories.ProductRepository;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+/**
+ * ProductEntity is both a JPA entity and an R2DBC one, so JPA would claim its reactive repository too and fail.
+ */
+@Configuration
+@EnableJpaRepositories(basePackageClasses = ProductRepository.class,
+        excludeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = ProductReactiveRepository.class))
+public class JpaConfig {
+}
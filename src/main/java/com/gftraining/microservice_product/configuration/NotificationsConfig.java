@@ -0,0 +1,21 @@
+package com.gftraining.microservice_product.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "notifications")
+public class NotificationsConfig {
+    private boolean dispatcherEnabled = true;
+    private Duration pollInterval = Duration.ofMillis(200);
+    private int batchSize = 100;
+    private int maxConcurrency = 8;
+    private Duration leaseTimeout = Duration.ofSeconds(30);
+    private Duration initialBackoff = Duration.ofSeconds(1);
+    private Duration maxBackoff = Duration.ofMinutes(5);
+    private int maxAttempts = 20;
+}
@@ -0,0 +1,23 @@
+package com.gftraining.microservice_product.configuration;
+
+import com.gftraining.microservice_product.controllers.RequestSummaryLogger;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+@Profile("!reactive")
+public class RequestSummaryConfig implements WebMvcConfigurer {
+    private final RequestSummaryLogger requestSummaryLogger;
+
+    public RequestSummaryConfig(RequestSummaryLogger requestSummaryLogger) {
+        super();
+        this.requestSummaryLogger = requestSummaryLogger;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(requestSummaryLogger).addPathPatterns("/products", "/products/**");
+    }
+}
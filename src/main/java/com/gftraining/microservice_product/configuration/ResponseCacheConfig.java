@@ -0,0 +1,18 @@
+package com.gftraining.microservice_product.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "response-cache")
+public class ResponseCacheConfig {
+    private boolean enabled = true;
+    private DataSize maxSize = DataSize.ofMegabytes(64);
+    private DataSize minCompressSize = DataSize.ofKilobytes(2);
+    private Duration expireAfterWrite = Duration.ofMinutes(10);
+}
@@ -0,0 +1,48 @@
+package com.gftraining.microservice_product.configuration;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import lombok.Setter;
+import org.slf4j.Marker;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets through one of every rate events of the loggers under logger at level or below, declared in
+ * logback-spring.xml. Events above level, and the ones the logger would not log anyway, are left alone, so warnings
+ * and errors are never sampled out.
+ */
+public class SamplingTurboFilter extends TurboFilter {
+    @Setter
+    private String logger = "";
+    @Setter
+    private int rate = 1;
+    @Setter
+    private String level = "INFO";
+
+    private Level maxLevel = Level.INFO;
+    private final AtomicLong events = new AtomicLong();
+
+    @Override
+    public void start() {
+        if (rate < 1) {
+            addError("rate must be 1 or more, was " + rate);
+            return;
+        }
+        maxLevel = Level.toLevel(level, Level.INFO);
+        super.start();
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger eventLogger, Level eventLevel, String format, Object[] params, Throwable t) {
+        // isXxxEnabled() checks come without a format and are not sampled, or they would use up the events let
+        // through. Logger.isEnabledFor would call back into the turbo filters, so the effective level is compared.
+        if (rate == 1 || format == null || eventLevel == null || eventLevel.toInt() > maxLevel.toInt()
+                || !eventLevel.isGreaterOrEqual(eventLogger.getEffectiveLevel()) || !eventLogger.getName().startsWith(logger)) {
+            return FilterReply.NEUTRAL;
+        }
+        return events.getAndIncrement() % rate == 0 ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+}
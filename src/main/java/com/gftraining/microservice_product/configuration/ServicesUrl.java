@@ -4,10 +4,16 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.List;
+
 @Data
 @ConfigurationProperties(prefix = "services-url")
 @Configuration
 public class ServicesUrl {
+    public static final String CART = "cart";
+    public static final String USER = "user";
+    public static final List<String> TARGETS = List.of(CART, USER);
+
     private String cartUrl;
     private String userUrl;
 }
@@ -0,0 +1,49 @@
+package com.gftraining.microservice_product.configuration;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * With virtual-threads.enabled, Tomcat runs every request on a virtual thread of its own instead of its pool of
+ * platform threads, and so do the StreamingResponseBody writers. The JDBC calls of ProductService then park only their
+ * virtual thread while they wait, so the number of requests in flight is no longer capped by server.tomcat.threads.max
+ * but by server.tomcat.max-connections and, for the ones reaching the database, by the Hikari pool.
+ * <p>
+ * ProductLoadTest --virtual-threads=true runs the load test in this mode, to compare it with the platform pool.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(prefix = "virtual-threads", name = "enabled", havingValue = "true")
+public class VirtualThreadsConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService virtualThreadExecutor() {
+        log.info("Serving requests on virtual threads");
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandlerCustomizer(ExecutorService virtualThreadExecutor) {
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadExecutor);
+    }
+
+    @Bean
+    public WebMvcConfigurer virtualThreadAsyncSupport(ExecutorService virtualThreadExecutor) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+                configurer.setTaskExecutor(new TaskExecutorAdapter(virtualThreadExecutor));
+            }
+        };
+    }
+}
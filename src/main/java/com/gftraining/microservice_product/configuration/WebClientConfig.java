@@ -0,0 +1,25 @@
+package com.gftraining.microservice_product.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Connection pool and timeouts of the client calling the cart and user services. Reactor Netty keeps one pool per
+ * remote host, so the max connections are per host.
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "web-client")
+public class WebClientConfig {
+    private int maxConnectionsPerHost = 50;
+    private int pendingAcquireMaxCount = 500;
+    private Duration pendingAcquireTimeout = Duration.ofSeconds(5);
+    private Duration maxIdleTime = Duration.ofSeconds(30);
+    private Duration maxLifeTime = Duration.ofMinutes(5);
+    private Duration evictInBackground = Duration.ofSeconds(30);
+    private Duration connectTimeout = Duration.ofSeconds(2);
+    private Duration responseTimeout = Duration.ofSeconds(5);
+}
@@ -1,48 +1,122 @@
 package com.gftraining.microservice_product.controllers;
 
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.gftraining.microservice_product.configuration.FeatureFlagsConfig;
+import com.gftraining.microservice_product.model.CatalogImportResultDTO;
+import com.gftraining.microservice_product.model.CatalogSyncResultDTO;
+import com.gftraining.microservice_product.model.CategoryStatsDTO;
 import com.gftraining.microservice_product.model.ProductDTO;
 import com.gftraining.microservice_product.model.ProductEntity;
+import com.gftraining.microservice_product.model.ProductsByIdDTO;
 import com.gftraining.microservice_product.model.ResponseHandler;
+import com.gftraining.microservice_product.model.StockReservationDTO;
+import com.gftraining.microservice_product.model.StockReservationResultDTO;
+import com.gftraining.microservice_product.services.CatalogImportService;
 import com.gftraining.microservice_product.services.ProductService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
 import java.util.List;
 
 @Slf4j
 @RestController
+@Validated
+@Profile("!reactive")
 @RequestMapping(value = "/products")
 public class ProductController {
 
     private final ProductService productService;
+    private final CatalogImportService catalogImportService;
     private final FeatureFlagsConfig featureFlag;
+    private final ObjectMapper objectMapper;
+    private final ProductResponseCache responseCache;
 
-    public ProductController(ProductService productService, FeatureFlagsConfig microserviceStatus) {
+    public ProductController(ProductService productService, CatalogImportService catalogImportService,
+                             FeatureFlagsConfig microserviceStatus, ObjectMapper objectMapper,
+                             ProductResponseCache responseCache) {
         super();
         this.productService = productService;
+        this.catalogImportService = catalogImportService;
         this.featureFlag = microserviceStatus;
+        this.objectMapper = objectMapper;
+        this.responseCache = responseCache;
     }
 
-    @GetMapping("")
-    @ResponseStatus(HttpStatus.OK)
-    public List<ProductEntity> getAll() {
-        return productService.getAllProducts();
+    // The lists of /products exclude each other by their parameters. A request combining them, or giving after
+    // without limit, matches none and is rejected with a 400 instead of falling back to the whole catalog.
+    @GetMapping(value = "", params = {"!after", "!limit", "!ids"})
+    public ResponseEntity<byte[]> getAll(@RequestParam(required = false) String category,
+                                         @RequestParam(required = false) BigDecimal minPrice,
+                                         @RequestParam(required = false) BigDecimal maxPrice,
+                                         @RequestParam(required = false) String sort,
+                                         WebRequest request) {
+        if (category == null && minPrice == null && maxPrice == null && sort == null) {
+            return responseCache.get(request, productService::getAllProducts, "getAll");
+        }
+        return responseCache.get(request, () -> productService.getProducts(category, minPrice, maxPrice, sort),
+                "getProducts", category, minPrice, maxPrice, sort);
+    }
+
+    @GetMapping("/categories/stats")
+    public List<CategoryStatsDTO> getCategoryStats() {
+        return productService.getCategoryStats();
+    }
+
+    @GetMapping(value = "", params = {"limit", "!ids"})
+    public List<ProductEntity> getProductsPage(@RequestParam(defaultValue = "0") Long after, @RequestParam Integer limit) {
+        return productService.getProductsPage(after, limit);
+    }
+
+    @GetMapping(value = "", params = {"ids", "!limit", "!after"})
+    public ProductsByIdDTO getProductsById(@RequestParam List<Long> ids) {
+        return productService.getProductsById(ids);
+    }
+
+    @GetMapping(value = "", params = {"!after", "!limit", "!ids"}, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAll() {
+        StreamingResponseBody body = outputStream -> productService.streamAllProducts(product -> {
+            try {
+                outputStream.write(objectMapper.writeValueAsBytes(product));
+                outputStream.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    @GetMapping("/search")
+    public List<ProductEntity> searchProducts(@RequestParam("q") String query,
+                                              @RequestParam(defaultValue = "false") boolean prefix,
+                                              @RequestParam(defaultValue = "10") Integer limit) {
+        return productService.searchProducts(query, prefix, limit);
     }
 
     @GetMapping("/name/{name}")
-    public List<ProductEntity> getProductByName(@PathVariable String name) {
-        return productService.getProductByName(name);
+    public ResponseEntity<byte[]> getProductByName(@PathVariable String name, WebRequest request) {
+        return responseCache.get(request, () -> productService.getProductByName(name), "getProductByName", name);
     }
 
     @GetMapping("/id/{id}")
-    public ProductEntity getProductById(@PathVariable Long id) {
-        return productService.getProductById(id);
+    public ResponseEntity<ProductEntity> getProductById(@PathVariable Long id, WebRequest request) {
+        if (responseCache.checkNotModified(request, productService.getProductVersion(id))) {
+            return null;
+        }
+        return ResponseEntity.ok(productService.getProductById(id));
     }
 
     @PutMapping("/{id}")
@@ -53,10 +127,9 @@ public class ProductController {
         String message = "Product with id " + id + " updated successfully.";
 
         if (featureFlag.isCallCartEnabled()) {
-            log.info("Feature flag to call CART is ENABLED");
-            productService.patchCartProducts(product, id).subscribe(result -> log.info("Update product from cart response: " + result.toString()));
+            log.debug("Feature flag to call CART is ENABLED");
         } else {
-            log.info("Feature flag to call CART is DISABLED");
+            log.debug("Feature flag to call CART is DISABLED");
             message = message + " Feature flag to call CART is DISABLED.";
         }
 
@@ -69,6 +142,11 @@ public class ProductController {
         productService.updateStock(unitsToSubtract, id);
     }
 
+    @PostMapping("/stock/reserve")
+    public List<StockReservationResultDTO> reserveStock(@RequestBody @NotEmpty List<@Valid StockReservationDTO> lines) {
+        return productService.reserveStock(lines);
+    }
+
     @DeleteMapping("/{id}")
     @ResponseStatus(HttpStatus.OK)
     public ResponseEntity<Object> deleteProductById(@PathVariable Long id) {
@@ -77,18 +155,16 @@ public class ProductController {
         String message = "Product with id " + id + " deleted successfully.";
 
         if (featureFlag.isCallCartEnabled()) {
-            log.info("Feature flag to call CART is ENABLED");
-            productService.deleteCartProducts(id).subscribe(result -> log.info("Respuesta delete product from carrito: " + result.toString()));
+            log.debug("Feature flag to call CART is ENABLED");
         } else {
-            log.info("Feature flag to call CART is DISABLED");
+            log.debug("Feature flag to call CART is DISABLED");
             message = message + " Feature flag to call CART is DISABLED.";
         }
 
         if (featureFlag.isCallUserEnabled()) {
-            log.info("Feature flag to call USER is ENABLED");
-            productService.deleteUserProducts(id).subscribe(result -> log.info("Respuesta delete product from user: " + result.toString()));
+            log.debug("Feature flag to call USER is ENABLED");
         } else {
-            log.info("Feature flag to call USER is DISABLED");
+            log.debug("Feature flag to call USER is DISABLED");
             message = message + " Feature flag to call USER is DISABLED.";
         }
 
@@ -104,7 +180,13 @@ public class ProductController {
 
     @PostMapping("/JSON_load")
     @ResponseStatus(HttpStatus.CREATED)
-    public void updateProductsFromJson(@RequestParam("path") String path) throws IOException {
-        productService.updateProductsFromJson(path);
+    public CatalogImportResultDTO updateProductsFromJson(@RequestParam("path") String path) throws IOException {
+        return catalogImportService.importFromJson(path);
+    }
+
+    @PostMapping(value = "/JSON_load", params = "mode=delta")
+    @ResponseStatus(HttpStatus.CREATED)
+    public CatalogSyncResultDTO syncProductsFromJson(@RequestParam("path") String path) throws IOException {
+        return catalogImportService.syncFromJson(path);
     }
 }
\ No newline at end of file
@@ -0,0 +1,180 @@
+package com.gftraining.microservice_product.controllers;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gftraining.microservice_product.configuration.CategoriesConfig;
+import com.gftraining.microservice_product.configuration.ResponseCacheConfig;
+import com.gftraining.microservice_product.model.ProductVersionDTO;
+import com.gftraining.microservice_product.services.CatalogVersion;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.WebRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the product lists as the JSON bytes written for them, serialized once per catalog version, and gzip
+ * compressed too when they are at least min-compress-size. A repeated read of an unchanged catalog is answered
+ * with those bytes, without querying the database, pricing the products or serializing them.
+ * <p>
+ * Entries are keyed by endpoint, arguments, the {@link CatalogVersion} read before loading the body and the
+ * discounts, so a write committing meanwhile or new discounts leave them behind, and the entries of older versions
+ * are no longer read and age out through expire-after-write and max-size. The stock is part of the JSON of every
+ * product, so stock updates bump the version as any other write. Writes done outside of the application are only
+ * seen when the entries expire.
+ * <p>
+ * Conditional requests are answered before any of that. The ETag of a list is made of the epoch and version of the
+ * catalog and the discounts, and the one of a product of its version and last modification and the discounts, so a
+ * client polling an unchanged resource gets a 304 without a body. Both tags also tell gzip apart, as the bytes sent
+ * differ. If-Modified-Since has a granularity of a second, so clients should prefer If-None-Match.
+ */
+@Slf4j
+@Component
+@Profile("!reactive")
+public class ProductResponseCache {
+    private static final String GZIP = "gzip";
+    private static final Pattern NOT_ACCEPTABLE = Pattern.compile("q\\s*=\\s*0(\\.0*)?");
+
+    private final CatalogVersion catalogVersion;
+    private final CategoriesConfig categoriesConfig;
+    private final ResponseCacheConfig responseCacheConfig;
+    private final ObjectMapper objectMapper;
+    private final Cache<List<Object>, CachedResponse> responses;
+
+    public ProductResponseCache(CatalogVersion catalogVersion, CategoriesConfig categoriesConfig,
+                                ResponseCacheConfig responseCacheConfig, ObjectMapper objectMapper,
+                                MeterRegistry meterRegistry) {
+        super();
+        this.catalogVersion = catalogVersion;
+        this.categoriesConfig = categoriesConfig;
+        this.responseCacheConfig = responseCacheConfig;
+        this.objectMapper = objectMapper;
+
+        responses = Caffeine.newBuilder()
+                .maximumWeight(responseCacheConfig.getMaxSize().toBytes())
+                .weigher((List<Object> key, CachedResponse response) -> response.size())
+                .expireAfterWrite(responseCacheConfig.getExpireAfterWrite())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, responses, "product.responses");
+    }
+
+    /**
+     * Returns the response of the endpoint for the arguments given, from the cache or, on a miss, with the body
+     * the supplier loads. Gzip is sent to clients accepting it when the body was compressed. Returns null when the
+     * request is conditional and the list has not changed, the 304 being already set on the response.
+     */
+    public ResponseEntity<byte[]> get(WebRequest request, Supplier<?> body, Object... key) {
+        boolean acceptsGzip = acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        long version = catalogVersion.current();
+        Map<String, Integer> categories = categoriesConfig.getCategories();
+        String eTag = "\"c" + Long.toHexString(catalogVersion.epoch()) + "-" + version + "-"
+                + Integer.toHexString(categories.hashCode()) + (acceptsGzip ? "-" + GZIP : "") + "\"";
+        if (request.checkNotModified(eTag, catalogVersion.lastModified())) {
+            return null;
+        }
+
+        if (!responseCacheConfig.isEnabled()) {
+            return new CachedResponse(serialize(body.get()), null).toResponseEntity(false);
+        }
+
+        List<Object> cacheKey = new ArrayList<>(Arrays.asList(key));
+        cacheKey.add(version);
+        cacheKey.add(categories);
+
+        CachedResponse response = responses.get(cacheKey, k -> {
+            byte[] json = serialize(body.get());
+            log.debug("Cached {} bytes of {} at catalog version {}", json.length, key[0], version);
+            return new CachedResponse(json, json.length < responseCacheConfig.getMinCompressSize().toBytes() ? null : gzip(json));
+        });
+        return response.toResponseEntity(acceptsGzip);
+    }
+
+    /**
+     * Sets the ETag and Last-Modified of the product version on the response and tells whether the request is
+     * conditional and the product has not changed, the 304 being already set on the response.
+     */
+    public boolean checkNotModified(WebRequest request, ProductVersionDTO product) {
+        long lastModified = product.getLastModified().toEpochMilli();
+        String eTag = "\"p" + product.getId() + "-" + product.getVersion() + "-" + Long.toHexString(lastModified) + "-"
+                + Integer.toHexString(categoriesConfig.getCategories().hashCode()) + "\"";
+        return request.checkNotModified(eTag, lastModified);
+    }
+
+    public void clear() {
+        responses.invalidateAll();
+        log.info("Cleared the response cache");
+    }
+
+    private byte[] serialize(Object body) {
+        try {
+            return objectMapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] gzip(byte[] json) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(json.length / 4);
+        try (GZIPOutputStream output = new GZIPOutputStream(compressed)) {
+            output.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return compressed.size() < json.length ? compressed.toByteArray() : null;
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) return false;
+
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if (name.equalsIgnoreCase(GZIP) || name.equals("*")) {
+                return parts.length == 1 || !NOT_ACCEPTABLE.matcher(parts[1].trim()).matches();
+            }
+        }
+        return false;
+    }
+
+    private static final class CachedResponse {
+        private final byte[] json;
+        private final byte[] gzip;
+
+        private CachedResponse(byte[] json, byte[] gzip) {
+            this.json = json;
+            this.gzip = gzip;
+        }
+
+        private int size() {
+            return json.length + (gzip == null ? 0 : gzip.length);
+        }
+
+        private ResponseEntity<byte[]> toResponseEntity(boolean acceptsGzip) {
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            if (acceptsGzip && gzip != null) {
+                return response.header(HttpHeaders.CONTENT_ENCODING, GZIP).body(gzip);
+            }
+            return response.body(json);
+        }
+    }
+}
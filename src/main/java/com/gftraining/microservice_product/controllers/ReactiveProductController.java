@@ -0,0 +1,50 @@
+package com.gftraining.microservice_product.controllers;
+
+import com.gftraining.microservice_product.model.ProductEntity;
+import com.gftraining.microservice_product.services.ReactiveProductService;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Product reads of the reactive profile, served by WebFlux in place of {@link ProductController}. A listing is sent
+ * as a JSON array or, asking for application/x-ndjson, streamed one product per line as they are read.
+ */
+@RestController
+@Profile("reactive")
+@RequestMapping(value = "/products")
+public class ReactiveProductController {
+
+    private final ReactiveProductService reactiveProductService;
+
+    public ReactiveProductController(ReactiveProductService reactiveProductService) {
+        super();
+        this.reactiveProductService = reactiveProductService;
+    }
+
+    @GetMapping(value = "", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<ProductEntity> getAll() {
+        return reactiveProductService.getAllProducts();
+    }
+
+    @GetMapping(value = "", params = "limit", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<ProductEntity> getProductsPage(@RequestParam(defaultValue = "0") Long after, @RequestParam Integer limit) {
+        return reactiveProductService.getProductsPage(after, limit);
+    }
+
+    @GetMapping("/name/{name}")
+    public Flux<ProductEntity> getProductByName(@PathVariable String name) {
+        return reactiveProductService.getProductByName(name);
+    }
+
+    @GetMapping("/id/{id}")
+    public Mono<ProductEntity> getProductById(@PathVariable Long id) {
+        return reactiveProductService.getProductById(id);
+    }
+}
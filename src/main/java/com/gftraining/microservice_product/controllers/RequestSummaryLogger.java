@@ -0,0 +1,71 @@
+package com.gftraining.microservice_product.controllers;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Collection;
+
+/**
+ * Logs one event per request to the product endpoints, in place of logging every step of it:
+ * op (the handler method), method, uri, status, rows (the elements of the body written, absent when it is not
+ * written by a converter, as for streams, or written as bytes, as the cached lists of ProductResponseCache) and
+ * durationUs, as key=value pairs.
+ */
+@Slf4j
+@Profile("!reactive")
+@ControllerAdvice(assignableTypes = ProductController.class)
+public class RequestSummaryLogger implements HandlerInterceptor, ResponseBodyAdvice<Object> {
+    private static final String START_ATTRIBUTE = RequestSummaryLogger.class.getName() + ".start";
+    private static final String ROWS_ATTRIBUTE = RequestSummaryLogger.class.getName() + ".rows";
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (log.isInfoEnabled()) request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object start = request.getAttribute(START_ATTRIBUTE);
+        if (start == null) return;
+
+        long durationUs = (System.nanoTime() - (Long) start) / 1000;
+        String op = handler instanceof HandlerMethod ? ((HandlerMethod) handler).getMethod().getName() : "unmapped";
+        Object rows = request.getAttribute(ROWS_ATTRIBUTE);
+        if (rows == null) {
+            log.info("op={} method={} uri={} status={} durationUs={}",
+                    op, request.getMethod(), request.getRequestURI(), response.getStatus(), durationUs);
+        } else {
+            log.info("op={} method={} uri={} status={} rows={} durationUs={}",
+                    op, request.getMethod(), request.getRequestURI(), response.getStatus(), rows, durationUs);
+        }
+    }
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (request instanceof ServletServerHttpRequest && !(body instanceof byte[])) {
+            int rows = body == null ? 0 : body instanceof Collection ? ((Collection<?>) body).size() : 1;
+            ((ServletServerHttpRequest) request).getServletRequest().setAttribute(ROWS_ATTRIBUTE, rows);
+        }
+        return body;
+    }
+}
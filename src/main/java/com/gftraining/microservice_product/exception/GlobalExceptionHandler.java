@@ -1,9 +1,11 @@
 package com.gftraining.microservice_product.exception;
 
+import com.gftraining.microservice_product.model.StockReservationResultDTO;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
+import org.springframework.web.bind.UnsatisfiedServletRequestParameterException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.server.ResponseStatusException;
@@ -60,6 +62,20 @@ public class GlobalExceptionHandler {
 
         ExceptionResponse res = new ExceptionResponse(ex.getMessage(), LocalDate.now());
 
-        return new ResponseEntity<>(res, HttpStatus.NOT_FOUND);
+        return new ResponseEntity<>(res, ex.getStatus());
+    }
+
+    @ExceptionHandler(UnsatisfiedServletRequestParameterException.class)
+    public ResponseEntity<ExceptionResponse> handleUnsatisfiedParameters(UnsatisfiedServletRequestParameterException ex) {
+
+        ExceptionResponse res = new ExceptionResponse(LocalDate.now(), "Parameters not valid",
+                List.of("Parameters " + ex.getActualParams().keySet() + " can't be combined"));
+        return new ResponseEntity<>(res, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(StockReservationException.class)
+    public ResponseEntity<List<StockReservationResultDTO>> handleStockReservationException(StockReservationException ex) {
+
+        return new ResponseEntity<>(ex.getResults(), HttpStatus.BAD_REQUEST);
     }
 }
@@ -0,0 +1,17 @@
+package com.gftraining.microservice_product.exception;
+
+import com.gftraining.microservice_product.model.StockReservationResultDTO;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+public class StockReservationException extends RuntimeException {
+
+    private final transient List<StockReservationResultDTO> results;
+
+    public StockReservationException(List<StockReservationResultDTO> results) {
+        super("Not enough stock to reserve every line.");
+        this.results = results;
+    }
+}
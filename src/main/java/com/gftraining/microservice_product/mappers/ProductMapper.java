@@ -0,0 +1,37 @@
+package com.gftraining.microservice_product.mappers;
+
+import com.gftraining.microservice_product.model.CartProductDTO;
+import com.gftraining.microservice_product.model.ProductDTO;
+import com.gftraining.microservice_product.model.ProductEntity;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.ReportingPolicy;
+
+/**
+ * Copies between the product DTOs and the entity with plain getters and setters generated at compile time. A target
+ * property left unmapped fails the build, so a field added to ProductEntity or CartProductDTO has to be mapped or
+ * ignored here explicitly.
+ */
+@Mapper(componentModel = "spring", unmappedTargetPolicy = ReportingPolicy.ERROR)
+public interface ProductMapper {
+
+    /**
+     * The id is given by the database or the path, the final price by ProductPricingService and the version and
+     * last modification by the database.
+     */
+    @Mapping(target = "id", ignore = true)
+    @Mapping(target = "finalPrice", ignore = true)
+    @Mapping(target = "version", ignore = true)
+    @Mapping(target = "lastModified", ignore = true)
+    ProductEntity toEntity(ProductDTO productDTO);
+
+    @Mapping(target = "id", source = "id")
+    CartProductDTO toCartProduct(Long id, ProductDTO productDTO);
+
+    CartProductDTO toCartProduct(ProductEntity product);
+
+    /**
+     * A copy to set the final price on, so the cached product the copy is made of stays as it was read.
+     */
+    ProductEntity copy(ProductEntity product);
+}
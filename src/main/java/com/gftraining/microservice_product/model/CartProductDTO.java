@@ -2,9 +2,11 @@ package com.gftraining.microservice_product.model;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 @Data
 @AllArgsConstructor
+@NoArgsConstructor
 public class CartProductDTO {
     private Long id;
     private String name;
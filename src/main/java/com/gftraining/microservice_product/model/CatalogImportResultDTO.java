@@ -0,0 +1,12 @@
+package com.gftraining.microservice_product.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class CatalogImportResultDTO {
+    private long rows;
+    private long millis;
+    private long rowsPerSecond;
+}
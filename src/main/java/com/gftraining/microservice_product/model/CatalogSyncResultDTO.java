@@ -0,0 +1,14 @@
+package com.gftraining.microservice_product.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class CatalogSyncResultDTO {
+    private long inserted;
+    private long updated;
+    private long deleted;
+    private long unchanged;
+    private long millis;
+}
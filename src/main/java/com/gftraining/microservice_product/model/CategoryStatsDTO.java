@@ -0,0 +1,19 @@
+package com.gftraining.microservice_product.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CategoryStatsDTO {
+    private String category;
+    private long count;
+    private long stock;
+    private BigDecimal minFinalPrice;
+    private BigDecimal maxFinalPrice;
+    private BigDecimal avgFinalPrice;
+}
@@ -0,0 +1,35 @@
+package com.gftraining.microservice_product.model;
+
+import com.gftraining.microservice_product.configuration.ServicesUrl;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+public class OutboxMessage {
+    private Long id;
+    private String idempotencyKey;
+    private Type type;
+    private Long productId;
+    private String payload;
+    private int attempts;
+    private Instant nextAttemptAt;
+
+    public enum Type {
+        CART_UPDATE(ServicesUrl.CART),
+        CART_DELETE(ServicesUrl.CART),
+        USER_DELETE(ServicesUrl.USER);
+
+        private final String service;
+
+        Type(String service) {
+            this.service = service;
+        }
+
+        public String getService() {
+            return service;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.gftraining.microservice_product.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -9,15 +10,18 @@ import lombok.RequiredArgsConstructor;
 import javax.persistence.*;
 import java.io.Serializable;
 import java.math.BigDecimal;
+import java.time.Instant;
 
 @Table(name = "product")
 @Entity
+@org.springframework.data.relational.core.mapping.Table("product")
 @Data
 @NoArgsConstructor(force = true)
 @RequiredArgsConstructor
 public class ProductEntity implements Serializable {
 
     @Id
+    @org.springframework.data.annotation.Id
     @NonNull
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -37,6 +41,23 @@ public class ProductEntity implements Serializable {
     @JsonProperty
     private Integer stock;
     @Transient
+    @org.springframework.data.annotation.Transient
     @JsonProperty
     private BigDecimal finalPrice;
+    /**
+     * Bumped by the database statements changing the product, together with lastModified; see ProductRepository.
+     */
+    @Column(insertable = false, updatable = false)
+    @JsonIgnore
+    private Integer version;
+    @Column(insertable = false, updatable = false)
+    @JsonIgnore
+    private Instant lastModified;
+
+    public ProductEntity(@NonNull Long id, @NonNull String name, @NonNull String category, @NonNull String description,
+                         @NonNull BigDecimal price, @NonNull Integer stock, Integer version, Instant lastModified) {
+        this(id, name, category, description, price, stock);
+        this.version = version;
+        this.lastModified = lastModified;
+    }
 }
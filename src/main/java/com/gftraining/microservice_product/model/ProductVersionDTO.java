@@ -0,0 +1,16 @@
+package com.gftraining.microservice_product.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductVersionDTO {
+    private Long id;
+    private Integer version;
+    private Instant lastModified;
+}
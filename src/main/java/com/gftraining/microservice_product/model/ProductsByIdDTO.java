@@ -0,0 +1,15 @@
+package com.gftraining.microservice_product.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductsByIdDTO {
+    private List<ProductEntity> products;
+    private List<Long> missingIds;
+}
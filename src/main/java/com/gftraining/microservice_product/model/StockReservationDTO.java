@@ -0,0 +1,19 @@
+package com.gftraining.microservice_product.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Positive;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockReservationDTO {
+    @NotNull(message = "cannot be null.")
+    private Long id;
+    @NotNull(message = "cannot be null.")
+    @Positive(message = "should be greater than 0.")
+    private Integer units;
+}
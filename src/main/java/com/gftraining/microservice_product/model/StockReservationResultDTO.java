@@ -0,0 +1,12 @@
+package com.gftraining.microservice_product.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class StockReservationResultDTO {
+    private Long id;
+    private Integer units;
+    private boolean reserved;
+}
@@ -0,0 +1,93 @@
+package com.gftraining.microservice_product.repositories;
+
+import com.gftraining.microservice_product.model.OutboxMessage;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Notifications for the cart and user services waiting to be delivered. A message is due when its next attempt
+ * time has passed; a message without one has been given up on and stays only for inspection.
+ */
+@Repository
+public class OutboxJdbcRepository {
+    private final JdbcTemplate jdbcTemplate;
+
+    public OutboxJdbcRepository(JdbcTemplate jdbcTemplate) {
+        super();
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void insert(OutboxMessage.Type type, Long productId, String payload) {
+        Timestamp now = Timestamp.from(Instant.now());
+        jdbcTemplate.update("insert into product_outbox (idempotency_key, type, product_id, payload, attempts, " +
+                        "next_attempt_at, created_at) values (?, ?, ?, ?, 0, ?, ?)",
+                UUID.randomUUID().toString(), type.name(), productId, payload, now, now);
+    }
+
+    /**
+     * Takes up to limit due messages, oldest first, and leases them until leaseUntil so no other dispatcher takes
+     * them meanwhile. A message is only returned if this call moved its next attempt time; if the dispatcher dies
+     * before settling it, the message is due again when the lease runs out.
+     */
+    public List<OutboxMessage> claimDue(Instant now, Instant leaseUntil, int limit) {
+        List<OutboxMessage> due = jdbcTemplate.query("select id, idempotency_key, type, product_id, payload, attempts, " +
+                        "next_attempt_at from product_outbox where next_attempt_at <= ? order by id fetch first ? rows only",
+                (rs, rowNum) -> new OutboxMessage(rs.getLong("id"), rs.getString("idempotency_key"),
+                        OutboxMessage.Type.valueOf(rs.getString("type")), rs.getLong("product_id"),
+                        rs.getString("payload"), rs.getInt("attempts"), rs.getTimestamp("next_attempt_at").toInstant()),
+                Timestamp.from(now), limit);
+        if (due.isEmpty()) return due;
+
+        Timestamp lease = Timestamp.from(leaseUntil);
+        int[][] claimed = jdbcTemplate.batchUpdate("update product_outbox set next_attempt_at = ? where id = ? and next_attempt_at = ?",
+                due, due.size(), (ps, message) -> {
+                    ps.setTimestamp(1, lease);
+                    ps.setLong(2, message.getId());
+                    ps.setTimestamp(3, Timestamp.from(message.getNextAttemptAt()));
+                });
+
+        // A single batch of due.size() statements, so its counts line up with the due messages.
+        List<OutboxMessage> messages = new ArrayList<>(due.size());
+        for (int i = 0; i < due.size(); i++) {
+            if (claimed[0][i] > 0) messages.add(due.get(i));
+        }
+        return messages;
+    }
+
+    /**
+     * Deletes the delivered message along with every older message of the same product and service, which it
+     * supersedes.
+     */
+    public void deleteDelivered(OutboxMessage message) {
+        List<Object> params = new ArrayList<>();
+        params.add(message.getProductId());
+        params.add(message.getId());
+        Arrays.stream(OutboxMessage.Type.values())
+                .filter(type -> type.getService().equals(message.getType().getService()))
+                .forEach(type -> params.add(type.name()));
+
+        jdbcTemplate.update("delete from product_outbox where product_id = ? and id <= ? and type in (" +
+                String.join(", ", Collections.nCopies(params.size() - 2, "?")) + ")", params.toArray());
+    }
+
+    /**
+     * Sets the attempts made and the time of the next one, null to stop delivering the messages.
+     */
+    public void reschedule(List<Long> ids, int attempts, Instant nextAttemptAt) {
+        Timestamp next = nextAttemptAt == null ? null : Timestamp.from(nextAttemptAt);
+        jdbcTemplate.batchUpdate("update product_outbox set attempts = ?, next_attempt_at = ? where id = ?",
+                ids, ids.size(), (ps, id) -> {
+                    ps.setInt(1, attempts);
+                    ps.setTimestamp(2, next);
+                    ps.setLong(3, id);
+                });
+    }
+}
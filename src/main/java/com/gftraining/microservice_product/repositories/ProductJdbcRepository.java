@@ -0,0 +1,212 @@
+package com.gftraining.microservice_product.repositories;
+
+import com.gftraining.microservice_product.model.CategoryStatsDTO;
+import com.gftraining.microservice_product.model.ProductEntity;
+import com.gftraining.microservice_product.model.StockReservationDTO;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static com.gftraining.microservice_product.configuration.CacheConfig.PRODUCTS_CACHE;
+
+/**
+ * Bulk statements on the product table that go straight to JDBC, bypassing JPA and so the repository cache
+ * annotations: every method keeps the products cache consistent by itself.
+ */
+@Repository
+public class ProductJdbcRepository {
+    private static final RowMapper<ProductEntity> PRODUCT = (rs, rowNum) -> new ProductEntity(rs.getLong("id"),
+            rs.getString("name"), rs.getString("category"), rs.getString("description"), rs.getBigDecimal("price"),
+            rs.getInt("stock"));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CacheManager cacheManager;
+
+    public ProductJdbcRepository(JdbcTemplate jdbcTemplate, CacheManager cacheManager) {
+        super();
+        this.jdbcTemplate = jdbcTemplate;
+        this.cacheManager = cacheManager;
+    }
+
+    /**
+     * Sends every conditional decrement in a single JDBC batch. Returns the affected rows of each line, 0 meaning
+     * the product does not exist or has not enough stock.
+     */
+    public int[] decrementStocks(List<StockReservationDTO> lines) {
+        int[] updated = jdbcTemplate.batchUpdate("update product set stock = stock - ?, version = version + 1, " +
+                        "last_modified = current_timestamp where id = ? and stock >= ?",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        StockReservationDTO line = lines.get(i);
+                        ps.setInt(1, line.getUnits());
+                        ps.setLong(2, line.getId());
+                        ps.setInt(3, line.getUnits());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return lines.size();
+                    }
+                });
+
+        Set<Long> ids = lines.stream().map(StockReservationDTO::getId).collect(Collectors.toSet());
+        evict(cache -> ids.forEach(cache::evict));
+        return updated;
+    }
+
+    public int deleteAll() {
+        int deleted = jdbcTemplate.update("delete from product");
+        evict(Cache::clear);
+        return deleted;
+    }
+
+    public int insertAll(List<ProductEntity> products) {
+        jdbcTemplate.batchUpdate("insert into product (name, category, description, price, stock) values (?, ?, ?, ?, ?)",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        ProductEntity product = products.get(i);
+                        ps.setString(1, product.getName());
+                        ps.setString(2, product.getCategory());
+                        ps.setString(3, product.getDescription());
+                        ps.setBigDecimal(4, product.getPrice());
+                        ps.setInt(5, product.getStock());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return products.size();
+                    }
+                });
+        return products.size();
+    }
+
+    public int updateAll(List<ProductEntity> products) {
+        jdbcTemplate.batchUpdate("update product set description = ?, price = ?, stock = ?, version = version + 1, " +
+                        "last_modified = current_timestamp where id = ?",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        ProductEntity product = products.get(i);
+                        ps.setString(1, product.getDescription());
+                        ps.setBigDecimal(2, product.getPrice());
+                        ps.setInt(3, product.getStock());
+                        ps.setLong(4, product.getId());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return products.size();
+                    }
+                });
+
+        List<Long> ids = products.stream().map(ProductEntity::getId).collect(Collectors.toList());
+        evict(cache -> ids.forEach(cache::evict));
+        return products.size();
+    }
+
+    public int deleteAllById(List<Long> ids) {
+        jdbcTemplate.batchUpdate("delete from product where id = ?", ids, ids.size(),
+                (ps, id) -> ps.setLong(1, id));
+
+        evict(cache -> ids.forEach(cache::evict));
+        return ids.size();
+    }
+
+    public void forEach(Consumer<ProductEntity> consumer) {
+        jdbcTemplate.query("select id, name, category, description, price, stock from product order by id",
+                (RowCallbackHandler) rs -> consumer.accept(PRODUCT.mapRow(rs, 0)));
+    }
+
+    public long maxId() {
+        Long maxId = jdbcTemplate.queryForObject("select max(id) from product", Long.class);
+        return maxId == null ? 0 : maxId;
+    }
+
+    /**
+     * The products up to lastId with any of the names that the sync has not matched yet, in id order, looked up
+     * through idx_product_name.
+     */
+    public List<ProductEntity> findUnmatchedByName(String syncId, Collection<String> names, long lastId) {
+        if (names.isEmpty()) return List.of();
+
+        List<Object> params = new ArrayList<>(names);
+        params.add(lastId);
+        params.add(syncId);
+        return jdbcTemplate.query("select id, name, category, description, price, stock from product p " +
+                        "where p.name in (" + String.join(", ", Collections.nCopies(names.size(), "?")) + ") " +
+                        "and p.id <= ? and not exists (select 1 from product_sync_match m " +
+                        "where m.sync_id = ? and m.product_id = p.id) order by p.id",
+                PRODUCT, params.toArray());
+    }
+
+    public void markMatched(String syncId, List<Long> ids) {
+        jdbcTemplate.batchUpdate("insert into product_sync_match (sync_id, product_id) values (?, ?)", ids, ids.size(),
+                (ps, id) -> {
+                    ps.setString(1, syncId);
+                    ps.setLong(2, id);
+                });
+    }
+
+    /**
+     * The next page of ids after afterId, up to lastId, of the products the sync has not matched.
+     */
+    public List<Long> findUnmatchedIds(String syncId, long afterId, long lastId, int limit) {
+        return jdbcTemplate.queryForList("select p.id from product p where p.id > ? and p.id <= ? " +
+                        "and not exists (select 1 from product_sync_match m where m.sync_id = ? and m.product_id = p.id) " +
+                        "order by p.id fetch first ? rows only",
+                Long.class, afterId, lastId, syncId, limit);
+    }
+
+    public void clearMatched(String syncId) {
+        jdbcTemplate.update("delete from product_sync_match where sync_id = ?", syncId);
+    }
+
+    /**
+     * Aggregates the products of every category in one query. The discounts travel as a VALUES table joined by
+     * category, so the final prices are computed (and rounded as in the service) by the database.
+     */
+    public List<CategoryStatsDTO> getCategoryStats(Map<String, Integer> discounts) {
+        List<Object> discountParams = new ArrayList<>(discounts.size() * 2);
+        discounts.forEach((category, discount) -> {
+            discountParams.add(category);
+            discountParams.add(discount);
+        });
+        // An empty VALUES is not valid SQL, a row matching no category stands in for no discounts.
+        String discountRows = discounts.isEmpty() ? "(cast(null as varchar), 0)"
+                : String.join(", ", Collections.nCopies(discounts.size(), "(cast(? as varchar), cast(? as int))"));
+
+        String finalPrice = "(p.price - round(p.price * coalesce(d.discount, 0) / 100, 2))";
+        return jdbcTemplate.query("select p.category, count(*) as products, sum(p.stock) as stock, " +
+                        "min(" + finalPrice + ") as min_final_price, max(" + finalPrice + ") as max_final_price, " +
+                        "round(avg(" + finalPrice + "), 2) as avg_final_price " +
+                        "from product p left join (values " + discountRows + ") as d(category, discount) " +
+                        "on d.category = p.category group by p.category order by p.category",
+                (rs, rowNum) -> new CategoryStatsDTO(rs.getString("category"), rs.getLong("products"),
+                        rs.getLong("stock"), rs.getBigDecimal("min_final_price"), rs.getBigDecimal("max_final_price"),
+                        rs.getBigDecimal("avg_final_price")),
+                discountParams.toArray());
+    }
+
+    // The cache manager is transaction aware (see CacheConfig), so inside a transaction the eviction waits for the commit.
+    private void evict(Consumer<Cache> eviction) {
+        Cache cache = cacheManager.getCache(PRODUCTS_CACHE);
+        if (cache != null) eviction.accept(cache);
+    }
+}
@@ -0,0 +1,22 @@
+package com.gftraining.microservice_product.repositories;
+
+import com.gftraining.microservice_product.model.ProductEntity;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+/**
+ * Non-blocking counterpart of {@link ProductRepository} for the reactive profile. It reads the same table through
+ * R2DBC and does not go through the products cache.
+ */
+@Repository
+public interface ProductReactiveRepository extends R2dbcRepository<ProductEntity, Long> {
+    Flux<ProductEntity> findAllByName(String name);
+
+    Flux<ProductEntity> findAllByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    @Query("select id, name, category, description, price, stock from product order by id")
+    Flux<ProductEntity> streamAll();
+}
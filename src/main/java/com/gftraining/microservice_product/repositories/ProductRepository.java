@@ -1,13 +1,85 @@
 package com.gftraining.microservice_product.repositories;
 
 import com.gftraining.microservice_product.model.ProductEntity;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static com.gftraining.microservice_product.configuration.CacheConfig.PRODUCTS_CACHE;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 @Repository
-public interface ProductRepository extends JpaRepository<ProductEntity, Long> {
+public interface ProductRepository extends JpaRepository<ProductEntity, Long>, JpaSpecificationExecutor<ProductEntity> {
     List<ProductEntity> findAllByName(String name);
 
+    List<ProductEntity> findAllByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query("select new com.gftraining.microservice_product.model.ProductEntity(" +
+            "p.id, p.name, p.category, p.description, p.price, p.stock) from ProductEntity p order by p.id")
+    Stream<ProductEntity> streamAll();
+
+    /**
+     * Subtracts the units in a single conditional update, so concurrent decrements can neither lose updates nor
+     * leave the stock below 0. Returns 0 when the product does not exist or has not enough stock.
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @CacheEvict(value = PRODUCTS_CACHE, key = "#id")
+    @Query("update ProductEntity p set p.stock = p.stock - :units, p.version = p.version + 1, " +
+            "p.lastModified = current_timestamp where p.id = :id and p.stock >= :units")
+    int decrementStock(@Param("id") Long id, @Param("units") Integer units);
+
+    /**
+     * Bumps the version and last modification of the product. The columns are not written by save, which has to be
+     * followed by this in the same transaction; the statements of ProductJdbcRepository bump them themselves.
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @CacheEvict(value = PRODUCTS_CACHE, key = "#id")
+    @Query("update ProductEntity p set p.version = p.version + 1, p.lastModified = current_timestamp where p.id = :id")
+    int touch(@Param("id") Long id);
+
+    /**
+     * Reads the product through the products cache. The constructor expression builds an instance no persistence
+     * context manages, so the cached product is never flushed nor changed by a transaction; it is shared by every
+     * caller, who has to copy it (see ProductMapper.copy) before changing it.
+     */
+    @Cacheable(value = PRODUCTS_CACHE, unless = "#result == null")
+    @Query("select new com.gftraining.microservice_product.model.ProductEntity(p.id, p.name, p.category, " +
+            "p.description, p.price, p.stock, p.version, p.lastModified) from ProductEntity p where p.id = :id")
+    Optional<ProductEntity> findCachedById(@Param("id") Long id);
+
+    /**
+     * Evicts instead of caching the saved instance, which still holds the values as sent (e.g. price scale) and
+     * not as the database stores them.
+     */
+    @Override
+    @CacheEvict(value = PRODUCTS_CACHE, key = "#result.id")
+    <S extends ProductEntity> S save(S entity);
+
+    @Override
+    @CacheEvict(PRODUCTS_CACHE)
+    void deleteById(Long id);
+
+    @Override
+    @CacheEvict(value = PRODUCTS_CACHE, allEntries = true)
+    <S extends ProductEntity> List<S> saveAll(Iterable<S> entities);
+
+    @Override
+    @CacheEvict(value = PRODUCTS_CACHE, allEntries = true)
+    void deleteAll();
 }
@@ -0,0 +1,28 @@
+package com.gftraining.microservice_product.repositories;
+
+import com.gftraining.microservice_product.model.ProductEntity;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.math.BigDecimal;
+
+/**
+ * Filters of the product listing. Each one adds its predicate only when its value is given, so the generated query
+ * stays a plain conjunction the category and category+price indexes can serve.
+ */
+public final class ProductSpecifications {
+
+    private ProductSpecifications() {
+    }
+
+    public static Specification<ProductEntity> hasCategory(String category) {
+        return (root, query, builder) -> category == null ? null : builder.equal(root.get("category"), category);
+    }
+
+    public static Specification<ProductEntity> priceAtLeast(BigDecimal minPrice) {
+        return (root, query, builder) -> minPrice == null ? null : builder.greaterThanOrEqualTo(root.get("price"), minPrice);
+    }
+
+    public static Specification<ProductEntity> priceAtMost(BigDecimal maxPrice) {
+        return (root, query, builder) -> maxPrice == null ? null : builder.lessThanOrEqualTo(root.get("price"), maxPrice);
+    }
+}
@@ -0,0 +1,299 @@
+package com.gftraining.microservice_product.services;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gftraining.microservice_product.configuration.CatalogImportConfig;
+import com.gftraining.microservice_product.model.CatalogImportResultDTO;
+import com.gftraining.microservice_product.model.CatalogSyncResultDTO;
+import com.gftraining.microservice_product.model.ProductEntity;
+import com.gftraining.microservice_product.repositories.ProductJdbcRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The rows written by every import count in product.import.rows and the rate of the last full import is the gauge
+ * product.import.rows.per.second.
+ */
+@Slf4j
+@Service
+public class CatalogImportService {
+    private static final List<ProductEntity> END_OF_CATALOG = new ArrayList<>(0);
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private final ProductJdbcRepository productJdbcRepository;
+    private final ProductPricingService pricingService;
+    private final ProductSearchService searchService;
+    private final CatalogImportConfig catalogImportConfig;
+    private final ObjectMapper objectMapper;
+    private final CatalogVersion catalogVersion;
+    private final ProductNotificationPublisher notificationPublisher;
+    private final Counter importedRows;
+    private final Counter syncedRows;
+    private final AtomicLong lastImportRowsPerSecond = new AtomicLong();
+
+    public CatalogImportService(ProductJdbcRepository productJdbcRepository, ProductPricingService pricingService,
+                                ProductSearchService searchService, CatalogImportConfig catalogImportConfig,
+                                ObjectMapper objectMapper, CatalogVersion catalogVersion,
+                                ProductNotificationPublisher notificationPublisher, MeterRegistry meterRegistry) {
+        super();
+        this.productJdbcRepository = productJdbcRepository;
+        this.pricingService = pricingService;
+        this.searchService = searchService;
+        this.catalogImportConfig = catalogImportConfig;
+        this.objectMapper = objectMapper;
+        this.catalogVersion = catalogVersion;
+        this.notificationPublisher = notificationPublisher;
+
+        importedRows = meterRegistry.counter("product.import.rows", "mode", "full");
+        syncedRows = meterRegistry.counter("product.import.rows", "mode", "delta");
+        meterRegistry.gauge("product.import.rows.per.second", lastImportRowsPerSecond);
+    }
+
+    /**
+     * Replaces the catalog with the products of a JSON array file, plain or gzip compressed. The delete and every
+     * insert share one transaction so readers never see the table empty or half loaded.
+     */
+    @Transactional
+    public CatalogImportResultDTO importFromJson(String path) throws IOException {
+        long start = System.nanoTime();
+
+        int deleted = productJdbcRepository.deleteAll();
+        catalogVersion.bumpAfterCompletion();
+        log.info("Deleted {} products", deleted);
+
+        long[] rows = {0};
+        readCatalog(Paths.get(path), batch -> rows[0] += productJdbcRepository.insertAll(batch));
+        pricingService.clearAfterCommit();
+        searchService.rebuildAfterCommit();
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        long rowsPerSecond = rows[0] * 1000 / Math.max(millis, 1);
+        importedRows.increment(rows[0]);
+        lastImportRowsPerSecond.set(rowsPerSecond);
+        log.info("Imported {} products in {} ms ({} rows/s)", rows[0], millis, rowsPerSecond);
+
+        return new CatalogImportResultDTO(rows[0], millis, rowsPerSecond);
+    }
+
+    /**
+     * Brings the catalog in line with a JSON array file writing only the differences. Every batch of incoming
+     * products is matched by name and category (repeated keys are paired in id order) with the current products
+     * of those names not matched yet, looked up by index, so matched products keep their id and neither the
+     * catalog nor the keys are held in memory. New products are inserted, changed ones updated and, once the file
+     * is read, the current ones left unmatched deleted, page by page. Everything is written in batches and in one
+     * transaction, along with the cart and user notifications of the updated and deleted products.
+     */
+    @Transactional
+    public CatalogSyncResultDTO syncFromJson(String path) throws IOException {
+        long start = System.nanoTime();
+        // The matched ids are kept in product_sync_match under this sync; products inserted by it are past lastId.
+        String syncId = UUID.randomUUID().toString();
+        long lastId = productJdbcRepository.maxId();
+
+        int batchSize = catalogImportConfig.getBatchSize();
+        CatalogChanges changes = new CatalogChanges(batchSize);
+        readCatalog(Paths.get(path), batch -> {
+            Set<String> names = batch.stream().map(ProductEntity::getName).collect(Collectors.toSet());
+            Map<String, Deque<ProductEntity>> currentProducts = new HashMap<>();
+            productJdbcRepository.findUnmatchedByName(syncId, names, lastId).forEach(product -> currentProducts
+                    .computeIfAbsent(naturalKey(product), key -> new ArrayDeque<>(1))
+                    .add(product));
+
+            List<Long> matchedIds = new ArrayList<>(batch.size());
+            for (ProductEntity product : batch) {
+                Deque<ProductEntity> matches = currentProducts.get(naturalKey(product));
+                ProductEntity current = matches == null ? null : matches.poll();
+                if (current == null) {
+                    changes.insert(product);
+                    continue;
+                }
+                matchedIds.add(current.getId());
+                if (isChanged(current, product)) {
+                    product.setId(current.getId());
+                    changes.update(product);
+                } else {
+                    changes.unchanged++;
+                }
+            }
+            productJdbcRepository.markMatched(syncId, matchedIds);
+        });
+
+        long afterId = 0;
+        List<Long> unmatchedIds;
+        while (!(unmatchedIds = productJdbcRepository.findUnmatchedIds(syncId, afterId, lastId, batchSize)).isEmpty()) {
+            unmatchedIds.forEach(changes::delete);
+            afterId = unmatchedIds.get(unmatchedIds.size() - 1);
+        }
+        changes.flush();
+        productJdbcRepository.clearMatched(syncId);
+        catalogVersion.bumpAfterCompletion();
+        searchService.rebuildAfterCommit();
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        syncedRows.increment(changes.inserted + changes.updated + changes.deleted);
+        log.info("Synchronized catalog in {} ms: {} inserted, {} updated, {} deleted, {} unchanged",
+                millis, changes.inserted, changes.updated, changes.deleted, changes.unchanged);
+
+        return new CatalogSyncResultDTO(changes.inserted, changes.updated, changes.deleted, changes.unchanged, millis);
+    }
+
+    public InputStream openCatalog(Path path) throws IOException {
+        InputStream catalog = new MappedFileInputStream(path, catalogImportConfig.getMappedRegionSize().toBytes());
+        if (isGzip(path)) {
+            log.info("Reading gzip compressed catalog {}", path);
+            return new GZIPInputStream(catalog, GZIP_BUFFER_SIZE);
+        }
+        return catalog;
+    }
+
+    /**
+     * Hands the products of the file in batches to the consumer on this thread, so they can join its transaction,
+     * while a parser thread reads the next batches through a bounded queue.
+     */
+    private void readCatalog(Path path, Consumer<List<ProductEntity>> consumer) throws IOException {
+        BlockingQueue<List<ProductEntity>> batches = new ArrayBlockingQueue<>(catalogImportConfig.getPipelineDepth());
+        ExecutorService parser = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "catalog-parser"));
+        try {
+            Future<?> parsing = parser.submit(() -> {
+                parse(path, batches);
+                return null;
+            });
+
+            List<ProductEntity> batch;
+            while ((batch = batches.take()) != END_OF_CATALOG) {
+                consumer.accept(batch);
+            }
+            parsing.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Catalog import interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException("Catalog import failed", e.getCause());
+        } finally {
+            parser.shutdownNow();
+        }
+    }
+
+    /**
+     * Puts the batches of the file and then the end of the catalog, even when parsing fails, so the consumer stops
+     * taking. When interrupted the consumer has given up and nobody takes anymore, so the end is not put: a blocking
+     * put would never return and the parser thread would be leaked.
+     */
+    private void parse(Path path, BlockingQueue<List<ProductEntity>> batches) throws IOException, InterruptedException {
+        int batchSize = catalogImportConfig.getBatchSize();
+        boolean cancelled = false;
+        try (InputStream catalog = openCatalog(path);
+             MappingIterator<ProductEntity> products = objectMapper.readerFor(ProductEntity.class).readValues(catalog)) {
+            List<ProductEntity> batch = new ArrayList<>(batchSize);
+            while (products.hasNextValue()) {
+                batch.add(products.nextValue());
+                if (batch.size() == batchSize) {
+                    batches.put(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) batches.put(batch);
+        } catch (InterruptedException e) {
+            cancelled = true;
+            throw e;
+        } finally {
+            if (!cancelled && !Thread.currentThread().isInterrupted()) batches.put(END_OF_CATALOG);
+        }
+    }
+
+    private static String naturalKey(ProductEntity product) {
+        return product.getName() + '\u0000' + product.getCategory();
+    }
+
+    private static boolean isChanged(ProductEntity current, ProductEntity product) {
+        return !Objects.equals(current.getDescription(), product.getDescription())
+                || current.getPrice().compareTo(product.getPrice()) != 0
+                || !Objects.equals(current.getStock(), product.getStock());
+    }
+
+    private static boolean isGzip(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(2);
+            channel.read(magic, 0);
+            return magic.position() == 2 && (magic.get(0) & 0xff) == 0x1f && (magic.get(1) & 0xff) == 0x8b;
+        }
+    }
+
+    private class CatalogChanges {
+        private final int batchSize;
+        private List<ProductEntity> inserts;
+        private List<ProductEntity> updates;
+        private List<Long> deletes;
+        private long inserted;
+        private long updated;
+        private long deleted;
+        private long unchanged;
+
+        private CatalogChanges(int batchSize) {
+            this.batchSize = batchSize;
+            this.inserts = new ArrayList<>(batchSize);
+            this.updates = new ArrayList<>(batchSize);
+            this.deletes = new ArrayList<>(batchSize);
+        }
+
+        private void insert(ProductEntity product) {
+            inserts.add(product);
+            if (inserts.size() == batchSize) flushInserts();
+        }
+
+        private void update(ProductEntity product) {
+            updates.add(product);
+            pricingService.evict(product.getId());
+            notificationPublisher.cartProductUpdated(product);
+            if (updates.size() == batchSize) flushUpdates();
+        }
+
+        private void delete(Long id) {
+            deletes.add(id);
+            pricingService.evict(id);
+            notificationPublisher.cartProductDeleted(id);
+            notificationPublisher.userProductDeleted(id);
+            if (deletes.size() == batchSize) flushDeletes();
+        }
+
+        private void flush() {
+            if (!inserts.isEmpty()) flushInserts();
+            if (!updates.isEmpty()) flushUpdates();
+            if (!deletes.isEmpty()) flushDeletes();
+        }
+
+        private void flushInserts() {
+            inserted += productJdbcRepository.insertAll(inserts);
+            inserts = new ArrayList<>(batchSize);
+        }
+
+        private void flushUpdates() {
+            updated += productJdbcRepository.updateAll(updates);
+            updates = new ArrayList<>(batchSize);
+        }
+
+        private void flushDeletes() {
+            deleted += productJdbcRepository.deleteAllById(deletes);
+            deletes = new ArrayList<>(batchSize);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.gftraining.microservice_product.services;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the changes of the catalog. Every write of products bumps it once its transaction completes, so a version
+ * read before reading the products is never newer than the products read: what is built from them can be kept
+ * under that version until the next bump.
+ * <p>
+ * The version restarts with the application, so whatever is handed out to clients is qualified by the epoch, the
+ * time the application started.
+ */
+@Service
+public class CatalogVersion {
+    private final AtomicLong version = new AtomicLong();
+    private final long epoch = System.currentTimeMillis();
+    private volatile long lastModified = epoch;
+
+    public long current() {
+        return version.get();
+    }
+
+    public long epoch() {
+        return epoch;
+    }
+
+    /**
+     * Time in milliseconds of the last bump, or the epoch before the first one.
+     */
+    public long lastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Bumps the version after the current transaction, committed or rolled back, or at once outside of one.
+     */
+    public void bumpAfterCompletion() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            bump();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                bump();
+            }
+        });
+    }
+
+    // The time goes first, so whoever reads the new version reads a time at least as new.
+    private void bump() {
+        lastModified = System.currentTimeMillis();
+        version.incrementAndGet();
+    }
+}
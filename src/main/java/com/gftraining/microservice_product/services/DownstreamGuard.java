@@ -0,0 +1,82 @@
+package com.gftraining.microservice_product.services;
+
+import com.gftraining.microservice_product.configuration.ServicesUrl;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+/**
+ * Guards the calls to every downstream target of {@link ServicesUrl} with a bulkhead, capping the calls in flight,
+ * and a circuit breaker, which opens on too many failed or slow calls. Both are configured under resilience4j.* by
+ * target name and keep their state in memory.
+ * <p>
+ * Besides the resilience4j.* gauges and counters published for them, every state transition of a circuit breaker
+ * counts in resilience4j.circuitbreaker.transitions and every call a bulkhead rejects in
+ * resilience4j.bulkhead.rejected.calls. Every guarded call is timed in product.downstream.calls by target and
+ * outcome: success, failure or rejected.
+ */
+@Slf4j
+@Service
+public class DownstreamGuard {
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final BulkheadRegistry bulkheadRegistry;
+    private final MeterRegistry meterRegistry;
+
+    public DownstreamGuard(CircuitBreakerRegistry circuitBreakerRegistry, BulkheadRegistry bulkheadRegistry,
+                           MeterRegistry meterRegistry) {
+        super();
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.bulkheadRegistry = bulkheadRegistry;
+        this.meterRegistry = meterRegistry;
+
+        for (String target : ServicesUrl.TARGETS) {
+            circuitBreakerRegistry.circuitBreaker(target).getEventPublisher().onStateTransition(event -> {
+                log.warn("Circuit breaker of {} went from {} to {}", target,
+                        event.getStateTransition().getFromState(), event.getStateTransition().getToState());
+                meterRegistry.counter("resilience4j.circuitbreaker.transitions", "name", target,
+                        "from", event.getStateTransition().getFromState().name(),
+                        "to", event.getStateTransition().getToState().name()).increment();
+            });
+            bulkheadRegistry.bulkhead(target).getEventPublisher().onCallRejected(event ->
+                    meterRegistry.counter("resilience4j.bulkhead.rejected.calls", "name", target).increment());
+        }
+    }
+
+    /**
+     * Runs the call through the bulkhead and circuit breaker of the target, every time it is subscribed. A call
+     * they do not let through fails at once with an error {@link #isRejected(Throwable)} recognizes.
+     */
+    public <T> Mono<T> guard(String target, Mono<T> call) {
+        Bulkhead bulkhead = bulkheadRegistry.bulkhead(target);
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker(target);
+        return Mono.defer(() -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            return call.transformDeferred(BulkheadOperator.of(bulkhead))
+                    .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                    .doOnSuccess(result -> sample.stop(callTimer(target, "success")))
+                    .doOnError(error -> sample.stop(callTimer(target, isRejected(error) ? "rejected" : "failure")));
+        });
+    }
+
+    private Timer callTimer(String target, String outcome) {
+        return Timer.builder("product.downstream.calls")
+                .tag("target", target)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    public static boolean isRejected(Throwable error) {
+        return error instanceof CallNotPermittedException || error instanceof BulkheadFullException;
+    }
+}
@@ -0,0 +1,67 @@
+package com.gftraining.microservice_product.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * Reads a file through memory-mapped regions of a fixed size, mapping the next region only when the previous one
+ * has been consumed. The file contents stay in the page cache instead of being copied onto the heap, whatever the
+ * size of the file.
+ */
+public class MappedFileInputStream extends InputStream {
+    private final FileChannel channel;
+    private final long size;
+    private final long regionSize;
+    private long nextRegionPosition;
+    private MappedByteBuffer region;
+
+    public MappedFileInputStream(Path path, long regionSize) throws IOException {
+        super();
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.regionSize = regionSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!hasRemaining()) return -1;
+        return region.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        if (length == 0) return 0;
+        if (!hasRemaining()) return -1;
+
+        int read = Math.min(length, region.remaining());
+        region.get(bytes, offset, read);
+        return read;
+    }
+
+    @Override
+    public int available() {
+        return region == null ? 0 : region.remaining();
+    }
+
+    @Override
+    public void close() throws IOException {
+        region = null;
+        channel.close();
+    }
+
+    private boolean hasRemaining() throws IOException {
+        if (region != null && region.hasRemaining()) return true;
+        if (nextRegionPosition >= size) return false;
+
+        long length = Math.min(regionSize, size - nextRegionPosition);
+        region = channel.map(FileChannel.MapMode.READ_ONLY, nextRegionPosition, length);
+        nextRegionPosition += length;
+        return true;
+    }
+}
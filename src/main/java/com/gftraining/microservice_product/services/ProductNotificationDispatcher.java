@@ -0,0 +1,220 @@
+package com.gftraining.microservice_product.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gftraining.microservice_product.configuration.NotificationsConfig;
+import com.gftraining.microservice_product.model.CartProductDTO;
+import com.gftraining.microservice_product.model.OutboxMessage;
+import com.gftraining.microservice_product.repositories.OutboxJdbcRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Delivers the notifications recorded in the outbox to the cart and user services, in the background.
+ * <p>
+ * Every poll interval it claims a batch of due messages and, of the messages of the same product and service, sends
+ * only the latest, with at most max-concurrency calls in flight. A delivered message is deleted with the older ones
+ * it supersedes; a failed one is retried with exponential backoff, keeping its idempotency key, until max-attempts.
+ * A message the {@link DownstreamGuard} rejects, because the circuit of its service is open or its bulkhead full,
+ * waits the initial backoff without spending an attempt. A full batch is followed by the next one without waiting.
+ * <p>
+ * A poll failing, e.g. with the database unavailable, is logged once and the next polls back off like the messages
+ * do, until one succeeds again. Polling stops as soon as the context starts closing, before the DataSource does.
+ * <p>
+ * Every retry scheduled counts in product.downstream.retries and every message given up on in
+ * product.outbox.abandoned, both by target service.
+ */
+@Slf4j
+@Service
+public class ProductNotificationDispatcher {
+    private final OutboxJdbcRepository outboxRepository;
+    private final ProductService productService;
+    private final NotificationsConfig notificationsConfig;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final ReentrantLock dispatching = new ReentrantLock();
+    private Disposable polling;
+    private volatile boolean stopping;
+    private int failedPolls;
+    private Instant pausedUntil = Instant.MIN;
+
+    public ProductNotificationDispatcher(OutboxJdbcRepository outboxRepository, ProductService productService,
+                                         NotificationsConfig notificationsConfig, ObjectMapper objectMapper,
+                                         MeterRegistry meterRegistry) {
+        super();
+        this.outboxRepository = outboxRepository;
+        this.productService = productService;
+        this.notificationsConfig = notificationsConfig;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!notificationsConfig.isDispatcherEnabled()) {
+            log.info("Notification dispatcher is DISABLED");
+            return;
+        }
+        polling = Flux.interval(notificationsConfig.getPollInterval(), Schedulers.boundedElastic())
+                .onBackpressureDrop()
+                .concatMap(tick -> Mono.fromRunnable(this::poll), 1)
+                .subscribe();
+    }
+
+    @EventListener(ContextClosedEvent.class)
+    public void stop() {
+        stopping = true;
+        if (polling != null) polling.dispose();
+
+        // Waits for a dispatch in flight, so it does not run into the DataSource closing.
+        try {
+            if (dispatching.tryLock(notificationsConfig.getLeaseTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                dispatching.unlock();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Dispatches one batch of due messages and returns how many were claimed.
+     */
+    public int dispatch() {
+        Instant now = Instant.now();
+        List<OutboxMessage> messages = outboxRepository.claimDue(now, now.plus(notificationsConfig.getLeaseTimeout()),
+                notificationsConfig.getBatchSize());
+        if (messages.isEmpty()) return 0;
+
+        // Messages come oldest first, so the last one of every product and service is the one to send.
+        Map<String, List<OutboxMessage>> byTarget = messages.stream().collect(Collectors.groupingBy(
+                message -> message.getType().getService() + ":" + message.getProductId(), LinkedHashMap::new, Collectors.toList()));
+
+        List<Map.Entry<List<OutboxMessage>, Outcome>> results = Flux.fromIterable(byTarget.values())
+                .flatMap(group -> Mono.defer(() -> send(group.get(group.size() - 1)))
+                        .thenReturn(Outcome.DELIVERED)
+                        .onErrorResume(error -> {
+                            if (DownstreamGuard.isRejected(error)) return Mono.just(Outcome.REJECTED);
+                            log.error("Notification {} failed: {}", group.get(group.size() - 1).getIdempotencyKey(), error.getMessage());
+                            return Mono.just(Outcome.FAILED);
+                        })
+                        .map(outcome -> Map.entry(group, outcome)), notificationsConfig.getMaxConcurrency())
+                .collectList()
+                .block();
+
+        int delivered = 0;
+        for (Map.Entry<List<OutboxMessage>, Outcome> result : results) {
+            List<OutboxMessage> group = result.getKey();
+            switch (result.getValue()) {
+                case DELIVERED:
+                    outboxRepository.deleteDelivered(group.get(group.size() - 1));
+                    delivered++;
+                    break;
+                case REJECTED:
+                    outboxRepository.reschedule(ids(group), group.get(group.size() - 1).getAttempts(),
+                            Instant.now().plus(notificationsConfig.getInitialBackoff()));
+                    break;
+                default:
+                    retryLater(group);
+            }
+        }
+        log.info("Delivered {} of {} notifications from {} outbox messages", delivered, results.size(), messages.size());
+        return messages.size();
+    }
+
+    private void poll() {
+        if (stopping || Instant.now().isBefore(pausedUntil)) return;
+
+        dispatching.lock();
+        try {
+            if (stopping) return;
+            while (dispatch() == notificationsConfig.getBatchSize()) {
+                log.info("Outbox batch was full, dispatching the next one");
+            }
+            if (failedPolls > 0) {
+                log.info("Notification dispatch recovered after {} failed polls", failedPolls);
+                failedPolls = 0;
+            }
+        } catch (RuntimeException e) {
+            if (stopping) return;
+            failedPolls++;
+            Duration pause = backoff(failedPolls);
+            pausedUntil = Instant.now().plus(pause);
+            if (failedPolls == 1) {
+                log.error("Notification dispatch failed, polling again in {}: {}", pause, e.getMessage());
+            } else {
+                log.debug("Notification dispatch failed {} times in a row, polling again in {}: {}", failedPolls, pause, e.getMessage());
+            }
+        } finally {
+            dispatching.unlock();
+        }
+    }
+
+    private Mono<?> send(OutboxMessage message) {
+        switch (message.getType()) {
+            case CART_UPDATE:
+                return productService.patchCartProduct(readCartProduct(message), message.getIdempotencyKey());
+            case CART_DELETE:
+                return productService.deleteCartProduct(message.getProductId(), message.getIdempotencyKey());
+            case USER_DELETE:
+                return productService.deleteUserProduct(message.getProductId(), message.getIdempotencyKey());
+            default:
+                return Mono.error(new IllegalStateException("Unknown outbox message type " + message.getType()));
+        }
+    }
+
+    private CartProductDTO readCartProduct(OutboxMessage message) {
+        try {
+            return objectMapper.readValue(message.getPayload(), CartProductDTO.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unreadable payload of outbox message " + message.getId(), e);
+        }
+    }
+
+    private void retryLater(List<OutboxMessage> group) {
+        int attempts = group.get(group.size() - 1).getAttempts() + 1;
+        List<Long> ids = ids(group);
+        String target = group.get(0).getType().getService();
+
+        if (attempts >= notificationsConfig.getMaxAttempts()) {
+            log.error("Giving up on outbox messages {} after {} attempts", ids, attempts);
+            meterRegistry.counter("product.outbox.abandoned", "target", target).increment(ids.size());
+            outboxRepository.reschedule(ids, attempts, null);
+            return;
+        }
+        meterRegistry.counter("product.downstream.retries", "target", target).increment();
+        outboxRepository.reschedule(ids, attempts, Instant.now().plus(backoff(attempts)));
+    }
+
+    private static List<Long> ids(List<OutboxMessage> group) {
+        List<Long> ids = new ArrayList<>(group.size());
+        group.forEach(message -> ids.add(message.getId()));
+        return ids;
+    }
+
+    private Duration backoff(int attempts) {
+        Duration backoff = notificationsConfig.getInitialBackoff().multipliedBy(1L << Math.min(attempts - 1, 30));
+        return backoff.compareTo(notificationsConfig.getMaxBackoff()) > 0 ? notificationsConfig.getMaxBackoff() : backoff;
+    }
+
+    private enum Outcome {
+        DELIVERED, FAILED, REJECTED
+    }
+}
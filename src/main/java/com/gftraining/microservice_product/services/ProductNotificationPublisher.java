@@ -0,0 +1,91 @@
+package com.gftraining.microservice_product.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gftraining.microservice_product.configuration.FeatureFlagsConfig;
+import com.gftraining.microservice_product.mappers.ProductMapper;
+import com.gftraining.microservice_product.model.CartProductDTO;
+import com.gftraining.microservice_product.model.OutboxMessage;
+import com.gftraining.microservice_product.model.ProductDTO;
+import com.gftraining.microservice_product.model.ProductEntity;
+import com.gftraining.microservice_product.repositories.OutboxJdbcRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.UncheckedIOException;
+
+/**
+ * Records the notifications the cart and user services need about product changes in the outbox. It must join
+ * the transaction changing the product, so a notification is stored if and only if its change commits; the
+ * {@link ProductNotificationDispatcher} delivers them afterwards. Notifications to a service whose feature flag is
+ * disabled are not recorded. A notification that can't be recorded fails the change with a 503 rather than letting
+ * it commit without its notification.
+ */
+@Slf4j
+@Service
+@Transactional(propagation = Propagation.MANDATORY)
+public class ProductNotificationPublisher {
+    private final OutboxJdbcRepository outboxRepository;
+    private final FeatureFlagsConfig featureFlags;
+    private final ObjectMapper objectMapper;
+    private final ProductMapper productMapper;
+
+    public ProductNotificationPublisher(OutboxJdbcRepository outboxRepository, FeatureFlagsConfig featureFlags,
+                                        ObjectMapper objectMapper, ProductMapper productMapper) {
+        super();
+        this.outboxRepository = outboxRepository;
+        this.featureFlags = featureFlags;
+        this.objectMapper = objectMapper;
+        this.productMapper = productMapper;
+    }
+
+    public void cartProductUpdated(Long id, ProductDTO product) {
+        if (!featureFlags.isCallCartEnabled()) return;
+
+        recordCartUpdate(productMapper.toCartProduct(id, product));
+    }
+
+    public void cartProductUpdated(ProductEntity product) {
+        if (!featureFlags.isCallCartEnabled()) return;
+
+        recordCartUpdate(productMapper.toCartProduct(product));
+    }
+
+    public void cartProductDeleted(Long id) {
+        if (!featureFlags.isCallCartEnabled()) return;
+
+        record(OutboxMessage.Type.CART_DELETE, id, null);
+        log.info("Recorded cart delete of product with id {}", id);
+    }
+
+    public void userProductDeleted(Long id) {
+        if (!featureFlags.isCallUserEnabled()) return;
+
+        record(OutboxMessage.Type.USER_DELETE, id, null);
+        log.info("Recorded user delete of product with id {}", id);
+    }
+
+    private void recordCartUpdate(CartProductDTO cartProduct) {
+        try {
+            record(OutboxMessage.Type.CART_UPDATE, cartProduct.getId(), objectMapper.writeValueAsString(cartProduct));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+        log.info("Recorded cart update of product with id {}", cartProduct.getId());
+    }
+
+    private void record(OutboxMessage.Type type, Long id, String payload) {
+        try {
+            outboxRepository.insert(type, id, payload);
+        } catch (DataAccessException e) {
+            log.warn("Could not record {} of product with id {}: {}", type, id, e.getMessage());
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Notification to " + type.getService() + " could not be recorded. Try again later.", e);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.gftraining.microservice_product.services;
+
+import com.gftraining.microservice_product.configuration.CategoriesConfig;
+import com.gftraining.microservice_product.model.ProductEntity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Slf4j
+@Service
+public class ProductPricingService {
+    private static final BigDecimal ONE_HUNDRED = new BigDecimal("100");
+
+    private final CategoriesConfig categoriesConfig;
+    private final Map<Long, PricedProduct> finalPrices = new ConcurrentHashMap<>();
+    private volatile Map<String, Integer> pricedCategories;
+
+    public ProductPricingService(CategoriesConfig categoriesConfig) {
+        super();
+        this.categoriesConfig = categoriesConfig;
+    }
+
+    /**
+     * Returns the final price of the product from the price table, computing it only when the product is not
+     * there yet or its price or category differ from the ones it was priced with.
+     */
+    public BigDecimal getFinalPrice(ProductEntity product) {
+        if (product.getId() == null) return calculateFinalPrice(product);
+        checkDiscounts();
+
+        PricedProduct priced = finalPrices.get(product.getId());
+        if (priced == null || !priced.isPriceOf(product)) {
+            priced = price(product);
+        }
+        return priced.finalPrice;
+    }
+
+    public void updateFinalPrice(ProductEntity product) {
+        checkDiscounts();
+        price(product);
+    }
+
+    public void evict(Long id) {
+        finalPrices.remove(id);
+    }
+
+    public void clear() {
+        finalPrices.clear();
+        log.info("Cleared the final price table");
+    }
+
+    /**
+     * Clears the table once the current transaction commits. Cleared before, a concurrent read could price the rows
+     * as they were before the transaction again, and a rollback would leave the table wiped for nothing.
+     */
+    public void clearAfterCommit() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            clear();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                clear();
+            }
+        });
+    }
+
+    public BigDecimal calculateFinalPrice(ProductEntity product) {
+        BigDecimal price = product.getPrice();
+        BigDecimal discount = BigDecimal.valueOf(getDiscount(product));
+
+        BigDecimal finalPrice = price.subtract(price.multiply(discount).divide(ONE_HUNDRED, 2, RoundingMode.HALF_UP));
+        log.trace("Calculated final price {} of product with id {}", finalPrice, product.getId());
+        return finalPrice;
+    }
+
+    private int getDiscount(ProductEntity product) {
+        return Optional.ofNullable(categoriesConfig.getCategories().get(product.getCategory())).orElse(0);
+    }
+
+    private PricedProduct price(ProductEntity product) {
+        PricedProduct priced = new PricedProduct(product.getCategory(), product.getPrice(), calculateFinalPrice(product));
+        finalPrices.put(product.getId(), priced);
+        return priced;
+    }
+
+    // Rebinding the categories replaces the whole map, so a reference check is enough to notice new discounts.
+    private void checkDiscounts() {
+        Map<String, Integer> categories = categoriesConfig.getCategories();
+        if (categories != pricedCategories) {
+            finalPrices.clear();
+            pricedCategories = categories;
+        }
+    }
+
+    private static final class PricedProduct {
+        private final String category;
+        private final BigDecimal price;
+        private final BigDecimal finalPrice;
+
+        private PricedProduct(String category, BigDecimal price, BigDecimal finalPrice) {
+            this.category = category;
+            this.price = price;
+            this.finalPrice = finalPrice;
+        }
+
+        private boolean isPriceOf(ProductEntity product) {
+            return price.equals(product.getPrice()) && category.equals(product.getCategory());
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package com.gftraining.microservice_product.services;
+
+import com.gftraining.microservice_product.model.ProductEntity;
+import com.gftraining.microservice_product.repositories.ProductJdbcRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+/**
+ * Keyword and type-ahead search over the name and description of the products, answered from memory.
+ * <p>
+ * The index keeps, for every term, the products containing it and a weight (occurrences, a name occurrence
+ * counting {@value #NAME_WEIGHT} times). Terms live in a sorted map, so the terms starting with a prefix are one
+ * contiguous range of it. Searches read without locking; writes are serialized and a full rebuild swaps a new
+ * index in when it is complete.
+ */
+@Slf4j
+@Service
+public class ProductSearchService {
+    private static final int NAME_WEIGHT = 3;
+    private static final int DESCRIPTION_WEIGHT = 1;
+    private static final int MAX_PREFIX_CANDIDATES = 1000;
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final ProductJdbcRepository productJdbcRepository;
+    private volatile SearchIndex index = new SearchIndex();
+
+    public ProductSearchService(ProductJdbcRepository productJdbcRepository) {
+        super();
+        this.productJdbcRepository = productJdbcRepository;
+    }
+
+    /**
+     * Returns the ids of the products containing every term of the query, best ranked first. With prefix the last
+     * term matches any term starting with it, for type-ahead. Keyword searches are exact; a type-ahead with more
+     * terms checks at most {@value #MAX_PREFIX_CANDIDATES} candidates, best weighted first, to bound its latency.
+     */
+    public List<Long> search(String query, boolean prefix, int limit) {
+        List<String> terms = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+        if (terms.isEmpty()) return List.of();
+
+        String prefixTerm = prefix ? terms.remove(terms.size() - 1) : null;
+        return index.search(terms, prefixTerm, limit);
+    }
+
+    public synchronized void index(ProductEntity product) {
+        index.remove(product.getId());
+        index.add(product);
+    }
+
+    public synchronized void remove(Long id) {
+        index.remove(id);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        SearchIndex rebuilt = new SearchIndex();
+        productJdbcRepository.forEach(rebuilt::add);
+        index = rebuilt;
+        log.info("Indexed {} products for search", rebuilt.documents.size());
+    }
+
+    /**
+     * Rebuilds the index once the current transaction commits, so a rolled back change never reaches it.
+     */
+    public void rebuildAfterCommit() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            rebuild();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                rebuild();
+            }
+        });
+    }
+
+    /**
+     * Takes the best ranked products of the terms from their ranked postings. A product scores the best weight it
+     * has in any of the terms, which is the weight the merge meets it with first.
+     */
+    private static List<Long> topIds(Collection<TermPostings> termPostings, int limit) {
+        RankedMerge merge = new RankedMerge(termPostings);
+        List<Long> ids = new ArrayList<>(limit);
+        while (ids.size() < limit && merge.next()) {
+            ids.add(merge.id);
+        }
+        return ids;
+    }
+
+    private static List<String> tokenize(String text) {
+        if (text == null) return List.of();
+        String normalized = Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        normalized = DIACRITICS.matcher(normalized).replaceAll("");
+
+        List<String> terms = new ArrayList<>();
+        for (String term : NON_ALPHANUMERIC.split(normalized)) {
+            if (!term.isEmpty()) terms.add(term);
+        }
+        return terms;
+    }
+
+    private static final class SearchIndex {
+        private final NavigableMap<String, TermPostings> postings = new ConcurrentSkipListMap<>();
+        private final Map<Long, DocumentTerms> documents = new ConcurrentHashMap<>();
+
+        private void add(ProductEntity product) {
+            Map<String, Integer> weights = new TreeMap<>();
+            tokenize(product.getName()).forEach(term -> weights.merge(term, NAME_WEIGHT, Integer::sum));
+            tokenize(product.getDescription()).forEach(term -> weights.merge(term, DESCRIPTION_WEIGHT, Integer::sum));
+
+            documents.put(product.getId(), new DocumentTerms(weights));
+            weights.forEach((term, weight) ->
+                    postings.computeIfAbsent(term, key -> new TermPostings()).put(product.getId(), weight));
+        }
+
+        private void remove(Long id) {
+            DocumentTerms document = documents.remove(id);
+            if (document == null) return;
+            for (String term : document.terms) {
+                postings.computeIfPresent(term, (key, termPostings) -> termPostings.remove(id) ? null : termPostings);
+            }
+        }
+
+        private List<Long> search(List<String> terms, String prefixTerm, int limit) {
+            if (terms.isEmpty()) return topIds(expansions(prefixTerm).values(), limit);
+
+            List<TermPostings> termPostings = new ArrayList<>(terms.size());
+            for (String term : terms) {
+                TermPostings ids = postings.get(term);
+                if (ids == null) return List.of();
+                termPostings.add(ids);
+            }
+            if (termPostings.size() == 1 && prefixTerm == null) return topIds(termPostings, limit);
+
+            // The rarest side drives the search and the other terms are probed for each of its products.
+            termPostings.sort(Comparator.comparingInt(TermPostings::size));
+            int rarestSize = termPostings.get(0).size();
+            boolean prefixDrives = prefixTerm != null && expansionsSize(prefixTerm, rarestSize) < rarestSize;
+
+            RankedMerge driver = new RankedMerge(prefixDrives
+                    ? expansions(prefixTerm).values() : termPostings.subList(0, 1));
+            List<TermPostings> probes = prefixDrives ? termPostings : termPostings.subList(1, termPostings.size());
+            String probedPrefix = prefixDrives ? null : prefixTerm;
+
+            int probesMaxWeight = probes.stream().mapToInt(TermPostings::maxWeight).sum();
+            if (probedPrefix != null) {
+                probesMaxWeight += expansions(probedPrefix).values().stream()
+                        .mapToInt(TermPostings::maxWeight).max().orElse(0);
+            }
+            int maxCandidates = prefixTerm == null ? Integer.MAX_VALUE : MAX_PREFIX_CANDIDATES;
+
+            PriorityQueue<ScoredId> top = new PriorityQueue<>(limit + 1);
+            int candidates = 0;
+            candidates:
+            while (candidates++ < maxCandidates && driver.next()) {
+                // The driver goes from best weight down, so once the worst of a full top cannot be beaten, stop.
+                if (top.size() == limit && top.peek().score > driver.weight + probesMaxWeight) break;
+
+                int score = driver.weight;
+                for (TermPostings probe : probes) {
+                    Integer weight = probe.weights.get(driver.id);
+                    if (weight == null) continue candidates;
+                    score += weight;
+                }
+                if (probedPrefix != null) {
+                    int weight = prefixWeight(driver.id, probedPrefix);
+                    if (weight == 0) continue;
+                    score += weight;
+                }
+
+                top.offer(new ScoredId(driver.id, score));
+                if (top.size() > limit) top.poll();
+            }
+
+            Long[] ids = new Long[top.size()];
+            for (int i = ids.length - 1; i >= 0; i--) {
+                ids[i] = top.poll().id;
+            }
+            return Arrays.asList(ids);
+        }
+
+        private NavigableMap<String, TermPostings> expansions(String prefix) {
+            return postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        }
+
+        private int expansionsSize(String prefix, int atMost) {
+            int size = 0;
+            for (TermPostings expansion : expansions(prefix).values()) {
+                size += expansion.size();
+                if (size >= atMost) break;
+            }
+            return size;
+        }
+
+        private int prefixWeight(Long id, String prefix) {
+            DocumentTerms document = documents.get(id);
+            return document == null ? 0 : document.prefixWeight(prefix);
+        }
+    }
+
+    /**
+     * The terms of a product sorted, so the ones starting with a prefix are found by a binary search.
+     */
+    private static final class DocumentTerms {
+        private final String[] terms;
+        private final int[] weights;
+
+        private DocumentTerms(Map<String, Integer> sortedWeights) {
+            this.terms = sortedWeights.keySet().toArray(new String[0]);
+            this.weights = sortedWeights.values().stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        private int prefixWeight(String prefix) {
+            int position = Arrays.binarySearch(terms, prefix);
+            int best = 0;
+            for (int i = position < 0 ? -position - 1 : position; i < terms.length && terms[i].startsWith(prefix); i++) {
+                best = Math.max(best, weights[i]);
+            }
+            return best;
+        }
+    }
+
+    /**
+     * The products containing a term with their weights, plus the same postings sorted by weight, which is built
+     * on the first search after a change so the best products of a term are read without scanning them all.
+     */
+    private static final class TermPostings {
+        private final Map<Long, Integer> weights = new ConcurrentHashMap<>();
+        private volatile int maxWeight;
+        private volatile int version;
+        private volatile RankedPostings ranked;
+
+        private void put(Long id, int weight) {
+            weights.put(id, weight);
+            maxWeight = Math.max(maxWeight, weight);
+            version++;
+        }
+
+        private boolean remove(Long id) {
+            weights.remove(id);
+            version++;
+            return weights.isEmpty();
+        }
+
+        private int size() {
+            return weights.size();
+        }
+
+        // Not lowered on removals, so it is an upper bound of the weights rather than their maximum.
+        private int maxWeight() {
+            return maxWeight;
+        }
+
+        private RankedPostings ranked() {
+            int currentVersion = version;
+            RankedPostings current = ranked;
+            if (current != null && current.version == currentVersion) return current;
+
+            List<Map.Entry<Long, Integer>> entries = new ArrayList<>(weights.entrySet());
+            entries.sort(Map.Entry.<Long, Integer>comparingByValue().reversed()
+                    .thenComparing(Map.Entry.comparingByKey()));
+            current = new RankedPostings(currentVersion, entries);
+            ranked = current;
+            return current;
+        }
+    }
+
+    private static final class RankedPostings {
+        private final int version;
+        private final long[] ids;
+        private final int[] weights;
+
+        private RankedPostings(int version, List<Map.Entry<Long, Integer>> entries) {
+            this.version = version;
+            this.ids = new long[entries.size()];
+            this.weights = new int[entries.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = entries.get(i).getKey();
+                weights[i] = entries.get(i).getValue();
+            }
+        }
+    }
+
+    /**
+     * Walks the ranked postings of several terms together, best weight first, giving every product once.
+     */
+    private static final class RankedMerge {
+        private final PriorityQueue<RankedCursor> cursors;
+        private final Set<Long> seen = new HashSet<>();
+        private long id;
+        private int weight;
+
+        private RankedMerge(Collection<TermPostings> termPostings) {
+            cursors = new PriorityQueue<>(Math.max(termPostings.size(), 1));
+            for (TermPostings postings : termPostings) {
+                RankedCursor cursor = new RankedCursor(postings.ranked());
+                if (cursor.hasCurrent()) cursors.add(cursor);
+            }
+        }
+
+        private boolean next() {
+            while (!cursors.isEmpty()) {
+                RankedCursor cursor = cursors.poll();
+                long candidate = cursor.id();
+                int candidateWeight = cursor.weight();
+                if (cursor.next()) cursors.add(cursor);
+                if (seen.add(candidate)) {
+                    id = candidate;
+                    weight = candidateWeight;
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class RankedCursor implements Comparable<RankedCursor> {
+        private final RankedPostings postings;
+        private int position;
+
+        private RankedCursor(RankedPostings postings) {
+            this.postings = postings;
+        }
+
+        private boolean hasCurrent() {
+            return position < postings.ids.length;
+        }
+
+        private boolean next() {
+            return ++position < postings.ids.length;
+        }
+
+        private long id() {
+            return postings.ids[position];
+        }
+
+        private int weight() {
+            return postings.weights[position];
+        }
+
+        @Override
+        public int compareTo(RankedCursor other) {
+            int byWeight = Integer.compare(other.weight(), weight());
+            return byWeight != 0 ? byWeight : Long.compare(id(), other.id());
+        }
+    }
+
+    // Orders the worst ranked first, so a bounded queue of them keeps the best ones.
+    private static final class ScoredId implements Comparable<ScoredId> {
+        private final long id;
+        private final int score;
+
+        private ScoredId(long id, int score) {
+            this.id = id;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(ScoredId other) {
+            int byScore = Integer.compare(score, other.score);
+            return byScore != 0 ? byScore : Long.compare(other.id, id);
+        }
+    }
+}
@@ -1,221 +1,429 @@
 package com.gftraining.microservice_product.services;
 
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.gftraining.microservice_product.configuration.CategoriesConfig;
 import com.gftraining.microservice_product.configuration.ServicesUrl;
 import com.gftraining.microservice_product.model.CartProductDTO;
+import com.gftraining.microservice_product.model.CategoryStatsDTO;
 import com.gftraining.microservice_product.model.ProductDTO;
+import com.gftraining.microservice_product.exception.StockReservationException;
+import com.gftraining.microservice_product.mappers.ProductMapper;
 import com.gftraining.microservice_product.model.ProductEntity;
+import com.gftraining.microservice_product.model.ProductVersionDTO;
+import com.gftraining.microservice_product.model.ProductsByIdDTO;
+import com.gftraining.microservice_product.model.StockReservationDTO;
+import com.gftraining.microservice_product.model.StockReservationResultDTO;
+import com.gftraining.microservice_product.repositories.ProductJdbcRepository;
 import com.gftraining.microservice_product.repositories.ProductRepository;
+import com.google.common.collect.Lists;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
-import org.modelmapper.ModelMapper;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Mono;
-import reactor.util.retry.Retry;
 
 import javax.persistence.EntityNotFoundException;
-import java.io.File;
-import java.io.IOException;
 import java.math.BigDecimal;
-import java.math.MathContext;
-import java.math.RoundingMode;
-import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
-
+import java.util.stream.Stream;
+
+import static com.gftraining.microservice_product.repositories.ProductSpecifications.hasCategory;
+import static com.gftraining.microservice_product.repositories.ProductSpecifications.priceAtLeast;
+import static com.gftraining.microservice_product.repositories.ProductSpecifications.priceAtMost;
+
+/**
+ * The synchronous operations are timed in product.service, tagged by method, with the percentile histogram set in
+ * application.yaml. The calls to the cart and user services are not: they return a Mono as soon as it is assembled,
+ * and DownstreamGuard times them in product.downstream.calls. The rows read by findAll and findAllByName are
+ * summarized in product.repository.rows and the stock decrements are counted in product.stock.decrements by outcome.
+ */
 @Slf4j
 @Service
 public class ProductService {
+    public static final int MAX_PAGE_SIZE = 1000;
+    public static final int IDS_CHUNK_SIZE = 500;
+    public static final int MAX_SEARCH_LIMIT = 100;
+    public static final Set<String> SORTABLE_FIELDS = Set.of("id", "name", "price", "stock");
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final String TIMER = "product.service";
+
     private final ProductRepository productRepository;
     private final CategoriesConfig categoriesConfig;
-    private final ModelMapper modelMapper;
+    private final ProductMapper productMapper;
     private final ServicesUrl servicesUrl;
-
+    private final ProductPricingService pricingService;
+    private final ProductJdbcRepository productJdbcRepository;
+    private final ProductSearchService searchService;
+    private final WebClient webClient;
+    private final ProductNotificationPublisher notificationPublisher;
+    private final DownstreamGuard downstreamGuard;
+    private final CatalogVersion catalogVersion;
+    private final DistributionSummary findAllRows;
+    private final DistributionSummary findAllByNameRows;
+    private final Counter stockDecremented;
+    private final Counter stockRejected;
 
     public ProductService(ProductRepository productRepository, CategoriesConfig categoriesConfig,
-                          ModelMapper modelMapper, ServicesUrl servicesUrl) {
+                          ProductMapper productMapper, ServicesUrl servicesUrl, ProductPricingService pricingService,
+                          ProductJdbcRepository productJdbcRepository, ProductSearchService searchService,
+                          WebClient webClient, ProductNotificationPublisher notificationPublisher,
+                          DownstreamGuard downstreamGuard, CatalogVersion catalogVersion,
+                          MeterRegistry meterRegistry) {
         super();
         this.productRepository = productRepository;
+        this.productJdbcRepository = productJdbcRepository;
         this.categoriesConfig = categoriesConfig;
-        this.modelMapper = modelMapper;
+        this.productMapper = productMapper;
         this.servicesUrl = servicesUrl;
+        this.pricingService = pricingService;
+        this.searchService = searchService;
+        this.webClient = webClient;
+        this.notificationPublisher = notificationPublisher;
+        this.downstreamGuard = downstreamGuard;
+        this.catalogVersion = catalogVersion;
+
+        findAllRows = DistributionSummary.builder("product.repository.rows").tag("query", "findAll")
+                .baseUnit("rows").publishPercentileHistogram().register(meterRegistry);
+        findAllByNameRows = DistributionSummary.builder("product.repository.rows").tag("query", "findAllByName")
+                .baseUnit("rows").publishPercentileHistogram().register(meterRegistry);
+        stockDecremented = meterRegistry.counter("product.stock.decrements", "outcome", "success");
+        stockRejected = meterRegistry.counter("product.stock.decrements", "outcome", "rejected");
     }
 
+    @Timed(TIMER)
     public List<ProductEntity> getAllProducts() {
         List<ProductEntity> products = productRepository.findAll();
-        log.info("Found all products");
+        findAllRows.record(products.size());
+        log.debug("Found all {} products", products.size());
+
+        return setDiscountedPriceToProducts(products);
+    }
+
+    /**
+     * Lists the products matching the filters given, with the filtering and sorting done by the database. The sort
+     * is "field" or "field,asc|desc" over {@link #SORTABLE_FIELDS}, by id when not given.
+     */
+    @Timed(TIMER)
+    public List<ProductEntity> getProducts(String category, BigDecimal minPrice, BigDecimal maxPrice, String sort) {
+        if (minPrice != null && maxPrice != null && minPrice.compareTo(maxPrice) > 0)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "minPrice can't be greater than maxPrice");
+
+        Specification<ProductEntity> filters = Specification.where(hasCategory(category))
+                .and(priceAtLeast(minPrice))
+                .and(priceAtMost(maxPrice));
+        List<ProductEntity> products = productRepository.findAll(filters, parseSort(sort));
+        log.debug("Found {} products of category {} priced between {} and {}", products.size(), category, minPrice, maxPrice);
+
+        return setDiscountedPriceToProducts(products);
+    }
+
+    @Timed(TIMER)
+    public List<CategoryStatsDTO> getCategoryStats() {
+        List<CategoryStatsDTO> stats = productJdbcRepository.getCategoryStats(categoriesConfig.getCategories());
+        log.info("Aggregated stats of {} categories", stats.size());
+        return stats;
+    }
+
+    @Timed(TIMER)
+    public List<ProductEntity> getProductsPage(Long afterId, Integer limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit must be between 1 and " + MAX_PAGE_SIZE);
+
+        List<ProductEntity> products = productRepository.findAllByIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, limit));
+        log.debug("Found page of {} products after id {}", products.size(), afterId);
 
-        log.info("Adding discounted price to the current list");
         return setDiscountedPriceToProducts(products);
     }
 
+    @Timed(TIMER)
+    @Transactional(readOnly = true)
+    public void streamAllProducts(Consumer<ProductEntity> consumer) {
+        try (Stream<ProductEntity> products = productRepository.streamAll()) {
+            products.forEach(product -> {
+                product.setFinalPrice(pricingService.getFinalPrice(product));
+                consumer.accept(product);
+            });
+        }
+        log.info("Streamed all products");
+    }
+
+    @Timed(TIMER)
     public List<ProductEntity> getProductByName(String name) {
         List<ProductEntity> products = productRepository.findAllByName(name);
+        findAllByNameRows.record(products.size());
         if (products.isEmpty()) throw new EntityNotFoundException("Products with name: " + name + " not found.");
-        log.info("Created list of product with name " + name);
+        log.debug("Found {} products with name {}", products.size(), name);
+
+        return setDiscountedPriceToProducts(products);
+    }
+
+    @Timed(TIMER)
+    public List<ProductEntity> searchProducts(String query, boolean prefix, Integer limit) {
+        if (limit < 1 || limit > MAX_SEARCH_LIMIT)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit must be between 1 and " + MAX_SEARCH_LIMIT);
 
-        log.info("Adding discounted price to the current list");
+        List<Long> ids = searchService.search(query, prefix, limit);
+        log.debug("Found {} products matching '{}'", ids.size(), query);
+        if (ids.isEmpty()) return List.of();
+
+        Map<Long, ProductEntity> productsById = new HashMap<>(ids.size());
+        productRepository.findAllById(ids).forEach(product -> productsById.put(product.getId(), product));
+
+        List<ProductEntity> products = ids.stream()
+                .map(productsById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
         return setDiscountedPriceToProducts(products);
     }
 
+    /**
+     * Looks up many products with one IN query per chunk of ids. Products are returned in the order of the ids and
+     * the ids not found are reported instead of failing the whole lookup.
+     */
+    @Timed(TIMER)
+    public ProductsByIdDTO getProductsById(List<Long> ids) {
+        List<Long> distinctIds = ids.stream().distinct().collect(Collectors.toList());
+
+        Map<Long, ProductEntity> productsById = new HashMap<>(distinctIds.size());
+        for (List<Long> chunk : Lists.partition(distinctIds, IDS_CHUNK_SIZE)) {
+            productRepository.findAllById(chunk).forEach(product -> productsById.put(product.getId(), product));
+        }
+        log.debug("Found {} of {} products by id", productsById.size(), distinctIds.size());
+
+        List<ProductEntity> products = new ArrayList<>(productsById.size());
+        List<Long> missingIds = new ArrayList<>();
+        for (Long id : distinctIds) {
+            ProductEntity product = productsById.get(id);
+            if (product == null) missingIds.add(id);
+            else products.add(product);
+        }
+
+        return new ProductsByIdDTO(setDiscountedPriceToProducts(products), missingIds);
+    }
+
+    @Timed(TIMER)
     public ProductEntity getProductById(Long id) {
-        ProductEntity product = productRepository.findById(id)
+        ProductEntity product = productRepository.findCachedById(id)
+                .map(productMapper::copy)
                 .orElseThrow(() -> new EntityNotFoundException("Product with id: " + id + " not found."));
-        log.info("Found product with id " + id);
+        log.debug("Found product with id {}", id);
 
-        log.info("Adding discounted price to the current product");
-        product.setFinalPrice(getDiscountedPrice(product));
+        product.setFinalPrice(pricingService.getFinalPrice(product));
         return product;
     }
 
+    /**
+     * Reads what the conditional requests of a product are answered with, from the products cache, without copying
+     * nor pricing the product. On a miss it loads the product into the cache, for the read that follows a mismatch.
+     */
+    @Timed(TIMER)
+    public ProductVersionDTO getProductVersion(Long id) {
+        return productRepository.findCachedById(id)
+                .map(product -> new ProductVersionDTO(product.getId(), product.getVersion(), product.getLastModified()))
+                .orElseThrow(() -> new EntityNotFoundException("Product with id: " + id + " not found."));
+    }
+
+    /**
+     * Updates the product and, in the same transaction, records the notification for the carts, so the carts
+     * eventually see every committed update and never a rolled back one.
+     */
+    @Timed(TIMER)
+    @Transactional
     public void putProductById(ProductDTO productDTO, Long id) {
         if (!categoriesConfig.getCategories().containsKey(productDTO.getCategory()))
             throw new EntityNotFoundException("Category " + productDTO.getCategory() + " not found. Categories" +
                     " allowed: " + categoriesConfig.getCategories().keySet());
-        log.info("Category verified");
+        log.debug("Category verified");
 
-        if (productRepository.findById(id).isEmpty()) {
+        if (productRepository.findCachedById(id).isEmpty()) {
             throw new EntityNotFoundException("Id " + id + " not found.");
         }
-        log.info("Id verified");
+        log.debug("Id verified");
 
-        ProductEntity product = modelMapper.map(productDTO, ProductEntity.class);
+        ProductEntity product = productMapper.toEntity(productDTO);
         product.setId(id);
-        log.info("Copied productDTO to a new ProductEntity to update product with id " + id);
-
-        productRepository.save(product);
+        log.debug("Copied productDTO to a new ProductEntity to update product with id {}", id);
+
+        ProductEntity savedProduct = productRepository.save(product);
+        productRepository.touch(id);
+        catalogVersion.bumpAfterCompletion();
+        notificationPublisher.cartProductUpdated(id, productDTO);
+        afterCommit(() -> {
+            pricingService.updateFinalPrice(savedProduct);
+            searchService.index(savedProduct);
+        });
     }
 
-    public Mono<Object> patchCartProducts(ProductDTO productDTO, Long id) {
-        CartProductDTO cartProductDTO = new CartProductDTO(id, productDTO.getName(), productDTO.getDescription(), productDTO.getPrice().doubleValue());
-        log.info("Starting asynchronous call to cart");
-        return WebClient.create(servicesUrl.getCartUrl())
-                .patch()
-                .uri("/products/{id}", id)
+    /**
+     * Makes a single attempt to update the product in the carts. Attempts with the same idempotency key are
+     * applied once by the cart service, so the caller can retry them safely. While the cart circuit is open or its
+     * bulkhead full the attempt fails at once, without calling the cart.
+     */
+    public Mono<Object> patchCartProduct(CartProductDTO cartProductDTO, String idempotencyKey) {
+        return downstreamGuard.guard(ServicesUrl.CART, webClient.patch()
+                .uri(servicesUrl.getCartUrl() + "/products/{id}", cartProductDTO.getId())
+                .header(IDEMPOTENCY_KEY_HEADER, idempotencyKey)
                 .body(BodyInserters.fromValue(cartProductDTO))
                 .retrieve()
-                .bodyToMono(Object.class)
-                .retryWhen(Retry.backoff(3, Duration.ofSeconds(1))
-                        .doBeforeRetry(retrySignal ->
-                                log.info("Trying connection to cart. Retry count: {}", retrySignal.totalRetries() + 1)))
-                .doOnError(error -> {
-                    log.error("Returning error when cart is called");
-                    throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
-                            "Error updating product from carts: Error connecting to cart service.");
-                });
+                .bodyToMono(Object.class));
     }
 
+    @Timed(TIMER)
     public void updateStock(Integer units, Long id) {
-        ProductEntity product = getProductById(id);
-        log.info("Copied product with id " + id + "to a new ProductEntity");
-
-        int newStock = product.getStock() - units;
+        if (units < 0) {
+            log.info("If the quantity is negative an error jumps");
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Modify the quantity. Stock can't be less than 0 and Quantity can't be negative");
+        }
 
-        if (newStock < 0 || units < 0) {
+        if (productRepository.decrementStock(id, units) == 0) {
+            if (!productRepository.existsById(id)) {
+                throw new EntityNotFoundException("Product with id: " + id + " not found.");
+            }
+            stockRejected.increment();
             log.info("If the stock is less than 0 an error jumps");
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Modify the quantity. Stock can't be less than 0 and Quantity can't be negative");
-        } else {
-            product.setStock(newStock);
-            log.info("Updated stock in the new ProductEntity to replace current product with id " + id);
+        }
+        catalogVersion.bumpAfterCompletion();
+        stockDecremented.increment();
+        log.info("Subtracted {} units from the stock of product with id {}", units, id);
+    }
 
-            productRepository.save(product);
+    /**
+     * Reserves the stock of every line in one transaction and one JDBC batch. If any line cannot be reserved the
+     * whole reservation is rolled back and the per-line results travel in the exception.
+     */
+    @Timed(TIMER)
+    @Transactional
+    public List<StockReservationResultDTO> reserveStock(List<StockReservationDTO> lines) {
+        int[] updated = productJdbcRepository.decrementStocks(lines);
+        catalogVersion.bumpAfterCompletion();
+
+        List<StockReservationResultDTO> results = new ArrayList<>(lines.size());
+        boolean allReserved = true;
+        for (int i = 0; i < lines.size(); i++) {
+            boolean reserved = updated[i] > 0;
+            results.add(new StockReservationResultDTO(lines.get(i).getId(), lines.get(i).getUnits(), reserved));
+            allReserved &= reserved;
         }
+
+        if (!allReserved) {
+            stockRejected.increment(lines.size());
+            log.info("Rolling back the reservation of {} lines", lines.size());
+            throw new StockReservationException(results);
+        }
+        stockDecremented.increment(lines.size());
+        log.info("Reserved stock of {} lines", lines.size());
+        return results;
     }
 
+    /**
+     * Deletes the product and, in the same transaction, records the notifications for the carts and users.
+     */
+    @Timed(TIMER)
+    @Transactional
     public void deleteProductById(Long id) {
-        if (productRepository.findById(id).isEmpty()) {
+        if (productRepository.findCachedById(id).isEmpty()) {
             throw new EntityNotFoundException("Id " + id + " not found.");
         }
-        log.info("Get products with id " + id + "to be deleted");
+        log.info("Deleting product with id {}", id);
         productRepository.deleteById(id);
+        catalogVersion.bumpAfterCompletion();
+        notificationPublisher.cartProductDeleted(id);
+        notificationPublisher.userProductDeleted(id);
+        afterCommit(() -> {
+            pricingService.evict(id);
+            searchService.remove(id);
+        });
     }
 
-    public Mono<Object> deleteCartProducts(Long id) {
-        log.info("Starting asynchronous call to cart");
-
-        return WebClient.create(servicesUrl.getCartUrl())
-                .delete()
-                .uri("/products/{id}", id)
+    public Mono<Object> deleteCartProduct(Long id, String idempotencyKey) {
+        return downstreamGuard.guard(ServicesUrl.CART, webClient.delete()
+                .uri(servicesUrl.getCartUrl() + "/products/{id}", id)
+                .header(IDEMPOTENCY_KEY_HEADER, idempotencyKey)
                 .retrieve()
-                .bodyToMono(Object.class)
-                .retryWhen(Retry.backoff(3, Duration.ofSeconds(1))
-                        .doBeforeRetry(retrySignal ->
-                                log.info("Trying connection to cart. Retry count: {}", retrySignal.totalRetries() + 1)))
-                .doOnError(error -> {
-                    log.error("Returning error when cart is called");
-                    throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
-                            "Error deleting product from carts: Error connecting to cart service.");
-                });
-    }
-
-    public Mono<HttpStatus> deleteUserProducts(Long id) {
-        log.info("Starting asynchronous call to user");
-        return WebClient.create(servicesUrl.getUserUrl())
-                .delete()
-                .uri("/favorite/product/{id}", id)
+                .bodyToMono(Object.class));
+    }
+
+    public Mono<HttpStatus> deleteUserProduct(Long id, String idempotencyKey) {
+        return downstreamGuard.guard(ServicesUrl.USER, webClient.delete()
+                .uri(servicesUrl.getUserUrl() + "/favorite/product/{id}", id)
+                .header(IDEMPOTENCY_KEY_HEADER, idempotencyKey)
                 .retrieve()
-                .bodyToMono(HttpStatus.class)
-                .retryWhen(Retry.backoff(3, Duration.ofSeconds(1))
-                        .doBeforeRetry(retrySignal ->
-                                log.info("Trying connection to user. Retry count: {}", retrySignal.totalRetries() + 1)))
-                .doOnError(error -> {
-                    log.error("Returning error when user is called");
-                    throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
-                            "Error deleting product from users: Error connecting to user service.");
-                });
+                .bodyToMono(HttpStatus.class));
     }
 
+    @Timed(TIMER)
     public Long saveProduct(ProductDTO productDTO) {
         if (!categoriesConfig.getCategories().containsKey(productDTO.getCategory()))
             throw new EntityNotFoundException("Category " + productDTO.getCategory() + " not found. Categories" +
                     " allowed: " + categoriesConfig.getCategories().keySet());
-        log.info("Category verified");
+        log.debug("Category verified");
 
-        ProductEntity product = modelMapper.map(productDTO, ProductEntity.class);
-        log.info("Copied productDTO to a new ProductEntity to add as new product");
+        ProductEntity product = productMapper.toEntity(productDTO);
+        log.debug("Copied productDTO to a new ProductEntity to add as new product");
 
-        return productRepository.save(product).getId();
+        ProductEntity savedProduct = productRepository.save(product);
+        catalogVersion.bumpAfterCompletion();
+        afterCommit(() -> {
+            pricingService.updateFinalPrice(savedProduct);
+            searchService.index(savedProduct);
+        });
+
+        return savedProduct.getId();
     }
 
-    public void updateProductsFromJson(String path) throws IOException {
-        productRepository.deleteAll();
-        log.info("Deleted all products");
+    private static Sort parseSort(String sort) {
+        if (sort == null || sort.isBlank()) return Sort.by("id");
 
-        ObjectMapper objectMapper = new ObjectMapper();
-        List<ProductEntity> products = objectMapper.readValue(new File(path), new TypeReference<>() {
-        });
-        log.info("Created a list with all products");
+        String[] parts = sort.split(",");
+        String field = parts[0].trim();
+        if (!SORTABLE_FIELDS.contains(field) || parts.length > 2)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Sort must be one of " + SORTABLE_FIELDS + " optionally followed by ,asc or ,desc");
 
-        productRepository.saveAll(products);
+        Sort.Direction direction = parts.length == 1 ? Sort.Direction.ASC : Sort.Direction.fromOptionalString(parts[1].trim())
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "Sort direction must be asc or desc"));
+        return Sort.by(direction, field).and(Sort.by("id"));
+    }
 
+    // A rolled back write must leave the price table and the search index as they were, so they follow it once committed.
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 
     private List<ProductEntity> setDiscountedPriceToProducts(List<ProductEntity> products){
         return products.stream()
                 .map(product -> {
-                    product.setFinalPrice(getDiscountedPrice(product));
+                    product.setFinalPrice(pricingService.getFinalPrice(product));
                     return product;
                 })
                 .collect(Collectors.toList());
     }
-
-    private BigDecimal getDiscountedPrice(ProductEntity product) {
-        log.info("Calculating final price");
-        BigDecimal price = product.getPrice();
-        BigDecimal discount = BigDecimal.valueOf(getDiscount(product));
-
-        return price.subtract(price.multiply(discount).divide(new BigDecimal("100"),2, RoundingMode.HALF_UP));
-    }
-
-    private int getDiscount(ProductEntity product) {
-        log.info("Looking for discount");
-        return Optional.ofNullable(categoriesConfig.getCategories().get(product.getCategory())).orElse(0);
-    }
 }
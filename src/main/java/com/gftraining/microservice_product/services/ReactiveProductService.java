@@ -0,0 +1,67 @@
+package com.gftraining.microservice_product.services;
+
+import com.gftraining.microservice_product.model.ProductEntity;
+import com.gftraining.microservice_product.repositories.ProductReactiveRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.persistence.EntityNotFoundException;
+
+import static com.gftraining.microservice_product.services.ProductService.MAX_PAGE_SIZE;
+
+/**
+ * The product reads of {@link ProductService} without blocking: products are emitted as R2DBC reads them, with their
+ * final price taken from the in-memory price table.
+ */
+@Slf4j
+@Service
+@Profile("reactive")
+public class ReactiveProductService {
+    private final ProductReactiveRepository productReactiveRepository;
+    private final ProductPricingService pricingService;
+
+    public ReactiveProductService(ProductReactiveRepository productReactiveRepository,
+                                  ProductPricingService pricingService) {
+        super();
+        this.productReactiveRepository = productReactiveRepository;
+        this.pricingService = pricingService;
+    }
+
+    public Flux<ProductEntity> getAllProducts() {
+        return setDiscountedPrice(productReactiveRepository.streamAll())
+                .doOnComplete(() -> log.info("Streamed all products"));
+    }
+
+    public Flux<ProductEntity> getProductsPage(Long afterId, Integer limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE)
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit must be between 1 and " + MAX_PAGE_SIZE));
+
+        return setDiscountedPrice(productReactiveRepository.findAllByIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, limit)));
+    }
+
+    public Mono<ProductEntity> getProductById(Long id) {
+        return productReactiveRepository.findById(id)
+                .switchIfEmpty(Mono.error(() -> new EntityNotFoundException("Product with id: " + id + " not found.")))
+                .map(this::setDiscountedPrice);
+    }
+
+    public Flux<ProductEntity> getProductByName(String name) {
+        return setDiscountedPrice(productReactiveRepository.findAllByName(name))
+                .switchIfEmpty(Flux.error(() -> new EntityNotFoundException("Products with name: " + name + " not found.")));
+    }
+
+    private Flux<ProductEntity> setDiscountedPrice(Flux<ProductEntity> products) {
+        return products.map(this::setDiscountedPrice);
+    }
+
+    private ProductEntity setDiscountedPrice(ProductEntity product) {
+        product.setFinalPrice(pricingService.getFinalPrice(product));
+        return product;
+    }
+}
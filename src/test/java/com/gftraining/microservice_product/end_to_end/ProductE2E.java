@@ -3,9 +3,11 @@ package com.gftraining.microservice_product.end_to_end;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.gftraining.microservice_product.configuration.FeatureFlagsConfig;
 import com.gftraining.microservice_product.model.ProductDTO;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
@@ -16,6 +18,7 @@ import org.springframework.test.web.servlet.MockMvc;
 
 import java.math.BigDecimal;
 
+import static com.gftraining.microservice_product.configuration.CacheConfig.PRODUCTS_CACHE;
 import static org.mockito.BDDMockito.given;
 import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.BEFORE_TEST_METHOD;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -29,12 +32,19 @@ public class ProductE2E {
 
     @Autowired
     private MockMvc mockmvc;
+    @Autowired
+    private CacheManager cacheManager;
 
     @MockBean
     private FeatureFlagsConfig featureFlag;
 
     ProductDTO productDTO = new ProductDTO("Pelota", "Juguetes","pelota de futbol",new BigDecimal(19.99),24);
 
+    @BeforeEach
+    void clearCache() {
+        cacheManager.getCache(PRODUCTS_CACHE).clear();
+    }
+
     @Test
     @DisplayName("Given the feature flags false, When perform all the sequence, Then the product has had to be removed")
     void deletePath() throws Exception {
@@ -2,34 +2,62 @@ package com.gftraining.microservice_product.integration_tests;
 
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gftraining.microservice_product.controllers.ProductResponseCache;
+import com.gftraining.microservice_product.model.CategoryStatsDTO;
 import com.gftraining.microservice_product.model.ProductDTO;
+import com.gftraining.microservice_product.model.ProductEntity;
+import com.gftraining.microservice_product.repositories.ProductRepository;
+import com.gftraining.microservice_product.services.ProductNotificationDispatcher;
+import com.gftraining.microservice_product.services.ProductSearchService;
 import com.gftraining.microservice_product.services.ProductService;
 import com.github.tomakehurst.wiremock.WireMockServer;
 import com.github.tomakehurst.wiremock.client.WireMock;
 import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
-import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
 
+import static com.gftraining.microservice_product.configuration.CacheConfig.PRODUCTS_CACHE;
 import static com.gftraining.microservice_product.integration_tests.ITConfig.*;
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
-import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.isA;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
 import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.BEFORE_TEST_METHOD;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -39,6 +67,7 @@ import static io.restassured.module.jsv.JsonSchemaValidator.matchesJsonSchemaInC
 
 @SpringBootTest
 @AutoConfigureMockMvc
+@AutoConfigureMetrics
 @ActiveProfiles("test")
 @Sql(scripts = "/data-test.sql", executionPhase = BEFORE_TEST_METHOD)
 class ProductIT {
@@ -48,10 +77,32 @@ class ProductIT {
     MockMvc mockmvc;
     @Autowired
     ProductService service;
-    
+    @Autowired
+    ProductSearchService searchService;
+    @Autowired
+    CacheManager cacheManager;
+    @Autowired
+    ProductResponseCache responseCache;
+    @Autowired
+    ProductNotificationDispatcher notificationDispatcher;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+    @Autowired
+    ProductRepository productRepository;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    MeterRegistry meterRegistry;
+
     final ProductDTO productDTO = new ProductDTO("Pelota", "Juguetes", "pelota de futbol", new BigDecimal("19.99"), 24);
     final ProductDTO badProductDTO = new ProductDTO("S", "0", "S", new BigDecimal(0), 10);
 
+    @BeforeEach
+    void clearCache() {
+        cacheManager.getCache(PRODUCTS_CACHE).clear();
+        responseCache.clear();
+    }
+
     @Test
     @DisplayName("When perform get request /products/getAll, Then is expected to have status of 200, be an ArrayList, be a Json and have size 13")
     void testGetAll() throws Exception {
@@ -63,6 +114,47 @@ class ProductIT {
                 .andExpect(content().string(matchesJsonSchemaInClasspath(PRODUCT_ARRAY_SCHEMA)));
     }
 
+    @Test
+    @DisplayName("Given an after id and a limit, When perform get request /products, Then the next page ordered by id is returned")
+    void getProductsPage() throws Exception {
+        mockmvc.perform(get("/products").param("after", "2").param("limit", "3"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.*", hasSize(3)))
+                .andExpect(jsonPath("$[0].id").value(3))
+                .andExpect(jsonPath("$[2].id").value(5))
+                .andExpect(content().string(matchesJsonSchemaInClasspath(PRODUCT_ARRAY_SCHEMA)));
+    }
+
+    @Test
+    @DisplayName("Given a limit out of range, When perform get request /products, Then is expected to have status of 400")
+    void getProductsPage_BadRequest() throws Exception {
+        mockmvc.perform(get("/products").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"after=2", "ids=1,2&limit=2", "ids=1,2&after=1"})
+    @DisplayName("Given list parameters that can't be combined, When perform get request /products, Then is expected to have status of 400")
+    void getProducts_ParametersNotCombinable(String query) throws Exception {
+        mockmvc.perform(get("/products?" + query))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string(matchesJsonSchemaInClasspath(BAD_REQUEST_ERROR_SCHEMA)));
+    }
+
+    @Test
+    @DisplayName("When perform get request /products accepting ndjson, Then every product is streamed in its own line")
+    void streamAll() throws Exception {
+        MvcResult result = mockmvc.perform(get("/products").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockmvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(startsWith("{\"id\":1,\"name\":\"Wonder\"")))
+                .andExpect(dispatched -> assertThat(dispatched.getResponse().getContentAsString().split("\n")).hasSize(13));
+    }
+
     @Test
     @DisplayName("Given an id, When perform get request /products/id/{id}, Then is expected to have status of 200, be a Json and have {id: 1, name: Wonder, stock: 90}")
     void getProductById() throws Exception {
@@ -73,6 +165,31 @@ class ProductIT {
                 .andExpect(content().string(matchesJsonSchemaInClasspath(PRODUCT_SCHEMA)));
     }
 
+    @Test
+    @DisplayName("Given a cached product, When it is updated and deleted, Then the cache follows every write")
+    void getProductById_Cache() throws Exception {
+        mockmvc.perform(get("/products/id/{id}", 1)).andExpect(status().isOk());
+        assertThat(cacheManager.getCache(PRODUCTS_CACHE).get(1L, ProductEntity.class).getFinalPrice()).isNull();
+
+        mockmvc.perform(put("/products/{id}", 1).contentType(MediaType.APPLICATION_JSON)
+                        .content(new ObjectMapper().writeValueAsString(productDTO)))
+                .andExpect(status().isOk());
+        mockmvc.perform(get("/products/id/{id}", 1))
+                .andExpect(content().json("{id: 1, name: Pelota, stock: 24, finalPrice: 15.99}"));
+
+        mockmvc.perform(MockMvcRequestBuilders.delete("/products/{id}", 1)).andExpect(status().isOk());
+        assertThat(cacheManager.getCache(PRODUCTS_CACHE).get(1L)).isNull();
+        mockmvc.perform(get("/products/id/{id}", 1)).andExpect(status().isNotFound());
+    }
+
+    @Test
+    @DisplayName("Given a list of ids, When perform get request /products, Then the products found and the missing ids are returned")
+    void getProductsById() throws Exception {
+        mockmvc.perform(get("/products").param("ids", "3,200,1"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{products: [{id: 3, name: Pelota, finalPrice: 8.00}, {id: 1, name: Wonder}], missingIds: [200]}"));
+    }
+
     @Test
     @DisplayName("Given an id, When perform get request /products/id/{id}, Then is expected to have status of 404")
     void getProductById_NotFoundException() throws Exception {
@@ -103,6 +220,79 @@ class ProductIT {
 
     }
 
+    @Test
+    @DisplayName("Given the products listed, When a product is updated, Then the next lists are built again with the update")
+    void getAll_ResponseCacheFollowsWrites() throws Exception {
+        ProductDTO peonza = new ProductDTO("Peonza", "Juguetes", "peonza de madera", new BigDecimal("4.99"), 30);
+        mockmvc.perform(get("/products")).andExpect(status().isOk());
+        mockmvc.perform(get("/products/name/{name}", "Peonza")).andExpect(status().isNotFound());
+
+        mockmvc.perform(put("/products/{id}", 1).contentType(MediaType.APPLICATION_JSON)
+                        .content(new ObjectMapper().writeValueAsString(peonza)))
+                .andExpect(status().isOk());
+
+        mockmvc.perform(get("/products"))
+                .andExpect(jsonPath("$[0].name").value("Peonza"));
+        mockmvc.perform(get("/products/name/{name}", "Peonza").header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING));
+    }
+
+    @Test
+    @DisplayName("Given the ETag of the products listed, When polling them, Then 304 is returned until a product is updated")
+    void getAll_IfNoneMatch() throws Exception {
+        String eTag = mockmvc.perform(get("/products"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockmvc.perform(get("/products").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        mockmvc.perform(get("/products").header(HttpHeaders.IF_NONE_MATCH, eTag).header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(status().isOk());
+
+        mockmvc.perform(put("/products/{id}", 1).contentType(MediaType.APPLICATION_JSON)
+                        .content(new ObjectMapper().writeValueAsString(productDTO)))
+                .andExpect(status().isOk());
+        mockmvc.perform(get("/products").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, not(eTag)))
+                .andExpect(jsonPath("$.*", hasSize(13)));
+    }
+
+    @Test
+    @DisplayName("Given the ETag and Last-Modified of a product, When polling it, Then 304 is returned until its stock or itself is updated")
+    void getProductById_ConditionalRequests() throws Exception {
+        MockHttpServletResponse first = mockmvc.perform(get("/products/id/{id}", 1))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+        String eTag = first.getHeader(HttpHeaders.ETAG);
+
+        mockmvc.perform(get("/products/id/{id}", 1).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        mockmvc.perform(get("/products/id/{id}", 1).header(HttpHeaders.IF_MODIFIED_SINCE, first.getHeader(HttpHeaders.LAST_MODIFIED)))
+                .andExpect(status().isNotModified());
+        mockmvc.perform(get("/products/id/{id}", 2).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk());
+
+        mockmvc.perform(put("/products/updateStock/{id}", 1).content("10").contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNoContent());
+        String afterStock = mockmvc.perform(get("/products/id/{id}", 1).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{id: 1, stock: 80}"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockmvc.perform(put("/products/{id}", 1).contentType(MediaType.APPLICATION_JSON)
+                        .content(new ObjectMapper().writeValueAsString(productDTO)))
+                .andExpect(status().isOk());
+        mockmvc.perform(get("/products/id/{id}", 1).header(HttpHeaders.IF_NONE_MATCH, afterStock))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{id: 1, name: Pelota}"));
+        mockmvc.perform(get("/products/id/{id}", 200).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     @DisplayName("Given an id, When perform put request /products/{id}, Then is expected to have status of 201")
     void putProductById() throws Exception {
@@ -130,93 +320,219 @@ class ProductIT {
     }
 
     @Test
-    @DisplayName("When retrying a patch call, then return 200 OK,")
-    void putProductById_CartCallRetry() throws Exception {
+    @DisplayName("Given a product updated twice, When the outbox is dispatched, Then the cart gets only the latest update once")
+    void putProductById_NotifiesCartThroughOutbox() throws Exception {
         wireMockServerSetPort(8080);
-        wireMockServer.stubFor(
-                patch(urlEqualTo("/products/7")).inScenario("testing retires")
-                        .whenScenarioStateIs(STARTED)
-                        .willReturn(aResponse().withStatus(500))
-                        .willSetStateTo("OK response")
-        );
-
-        wireMockServer.stubFor(
-                patch(urlEqualTo("/products/7")).inScenario("testing retires")
-                        .whenScenarioStateIs("OK response")
-                        .willReturn(aResponse().withStatus(200))
-        );
-
-        Mono<Object> cartsMono = service.patchCartProducts(productDTO, 7L);
-
-        StepVerifier.create(cartsMono)
-                .expectComplete()
-                .verify();
-
-        verify(2, patchRequestedFor(urlPathEqualTo("/products/7")));
+        wireMockServer.stubFor(patch(urlEqualTo("/products/7")).willReturn(aResponse().withStatus(200)));
+
+        mockmvc.perform(put("/products/{id}", 7).contentType(MediaType.APPLICATION_JSON)
+                        .content(asJsonString(productDTO)))
+                .andExpect(status().isOk());
+        mockmvc.perform(put("/products/{id}", 7).contentType(MediaType.APPLICATION_JSON)
+                        .content(asJsonString(new ProductDTO("Pelota", "Juguetes", "pelota de futbol", new BigDecimal("9.99"), 24))))
+                .andExpect(status().isOk());
+        assertThat(jdbcTemplate.queryForObject("select count(*) from product_outbox", Integer.class)).isEqualTo(2);
+        verify(0, patchRequestedFor(urlPathEqualTo("/products/7")));
+
+        assertThat(notificationDispatcher.dispatch()).isEqualTo(2);
+
+        verify(1, patchRequestedFor(urlPathEqualTo("/products/7"))
+                .withHeader(ProductService.IDEMPOTENCY_KEY_HEADER, matching(".+"))
+                .withRequestBody(containing("\"price\":9.99")));
+        assertThat(jdbcTemplate.queryForObject("select count(*) from product_outbox", Integer.class)).isZero();
         wireMockServerStop();
     }
 
     @Test
-    @DisplayName("When retrying a delete call, then return 200 OK,")
-    void deleteProductById_CartCallRetry() {
+    @DisplayName("Given the outbox unavailable, When perform put request /products/{id}, Then is expected to have status of 503 and neither the product nor the search index are updated")
+    void putProductById_OutboxUnavailable() throws Exception {
+        jdbcTemplate.execute("drop table Product_Outbox");
+
+        mockmvc.perform(put("/products/{id}", 1).contentType(MediaType.APPLICATION_JSON)
+                        .content(asJsonString(new ProductDTO("Peonza", "Juguetes", "peonza de madera", new BigDecimal("4.99"), 30))))
+                .andExpect(status().isServiceUnavailable());
+        mockmvc.perform(get("/products/id/{id}", 1))
+                .andExpect(content().json("{id: 1, name: Wonder}"));
+        mockmvc.perform(get("/products/search").param("q", "peonza"))
+                .andExpect(jsonPath("$.*", hasSize(0)));
+    }
+
+    @Test
+    @DisplayName("Given a cached product, When it is written in a transaction, Then it stays cached until the commit")
+    void productsCache_EvictedAfterCommit() throws Exception {
+        mockmvc.perform(get("/products/id/{id}", 1)).andExpect(status().isOk());
+        Cache cache = cacheManager.getCache(PRODUCTS_CACHE);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            productRepository.touch(1L);
+            assertThat(cache.get(1L)).isNotNull();
+        });
+
+        assertThat(cache.get(1L)).isNull();
+    }
+
+    @Test
+    @DisplayName("Given several calls to cart, When they are done one after another, Then they reuse one pooled connection reported by actuator")
+    void cartCalls_ReusePooledConnection() throws Exception {
         wireMockServerSetPort(8080);
-        wireMockServer.stubFor(
-                delete(urlEqualTo("/products/7")).inScenario("testing retires")
-                        .whenScenarioStateIs(STARTED)
-                        .willReturn(aResponse().withStatus(500))
-                        .willSetStateTo("OK response")
-        );
-
-        wireMockServer.stubFor(
-                delete(urlEqualTo("/products/7")).inScenario("testing retires")
-                        .whenScenarioStateIs("OK response")
-                        .willReturn(aResponse().withStatus(200))
-        );
-
-        Mono<Object> cartsMono = service.deleteCartProducts(7L);
-
-        StepVerifier.create(cartsMono)
-                .expectComplete()
-                .verify();
-
-        verify(2, deleteRequestedFor(urlPathEqualTo("/products/7")));
+        wireMockServer.stubFor(delete(urlEqualTo("/products/7")).willReturn(aResponse().withStatus(200)));
+
+        for (int i = 0; i < 3; i++) {
+            StepVerifier.create(service.deleteCartProduct(7L, UUID.randomUUID().toString()))
+                    .expectComplete()
+                    .verify();
+        }
+
+        mockmvc.perform(get("/actuator/metrics/reactor.netty.connection.provider.total.connections")
+                        .param("tag", "name:downstream")
+                        .param("tag", "remote.address:localhost:8080"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.measurements[0].value").value(1.0));
+        verify(3, deleteRequestedFor(urlPathEqualTo("/products/7")));
         wireMockServerStop();
     }
 
     @Test
-    @DisplayName("When retrying a delete call, then return 204 OK,")
-    void deleteProductById_UserCallRetry() {
-        wireMockServerSetPort(8082);
-        wireMockServer.stubFor(
-                delete(urlEqualTo("/favorite/product/7")).inScenario("testing retires")
-                        .whenScenarioStateIs(STARTED)
-                        .willReturn(aResponse().withStatus(500))
-                        .willSetStateTo("OK response")
-        );
+    @DisplayName("Given the downstream circuit breakers and bulkheads, When asking actuator, Then their state of every target is reported")
+    void downstreamGuards_ReportMetrics() throws Exception {
+        for (String target : List.of("cart", "user")) {
+            mockmvc.perform(get("/actuator/metrics/resilience4j.circuitbreaker.state")
+                            .param("tag", "name:" + target)
+                            .param("tag", "state:closed"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.measurements[0].value").value(1.0));
+            mockmvc.perform(get("/actuator/metrics/resilience4j.bulkhead.available.concurrent.calls")
+                            .param("tag", "name:" + target))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.measurements[0].value").value(25.0));
+        }
+    }
 
-        wireMockServer.stubFor(
-                delete(urlEqualTo("/favorite/product/7")).inScenario("testing retires")
-                        .whenScenarioStateIs("OK response")
-                        .willReturn(aResponse().withStatus(204))
-        );
+    @Test
+    @DisplayName("Given calls to the cart service and to getProductById, When they return, Then only getProductById is timed in product.service")
+    void serviceTimer_SkipsDownstreamCalls() {
+        service.getProductById(1L);
+        service.deleteCartProduct(7L, UUID.randomUUID().toString());
 
-        Mono<HttpStatus> usersMono = service.deleteUserProducts(7L);
+        assertThat(meterRegistry.find("product.service").tag("method", "getProductById").timer()).isNotNull();
+        assertThat(meterRegistry.find("product.service").tag("method", "deleteCartProduct").timer()).isNull();
+    }
 
-        StepVerifier.create(usersMono)
-                .expectComplete()
-                .verify();
+    @Test
+    @DisplayName("Given a call to getAll, When scraping prometheus, Then the service timer and the rows read are published as histograms")
+    void getAll_PublishesPrometheusMetrics() throws Exception {
+        mockmvc.perform(get("/products")).andExpect(status().isOk());
 
-        verify(2, deleteRequestedFor(urlPathEqualTo("/favorite/product/7")));
-        wireMockServerStop();
+        mockmvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("product_service_seconds_bucket{class=\"com.gftraining.microservice_product.services.ProductService\"")))
+                .andExpect(content().string(containsString("product_service_seconds{class=\"com.gftraining.microservice_product.services.ProductService\",exception=\"none\",method=\"getAllProducts\",quantile=\"0.95\"")))
+                .andExpect(content().string(containsString("product_repository_rows_bucket{query=\"findAll\"")))
+                .andExpect(content().string(containsString("http_server_requests_seconds_bucket{")));
     }
 
     @Test
     @DisplayName("Given a path, When perform post request /products/JSON_load, Then is expected to have status of 201")
     void updateProductsFromJson() throws Exception {
-        //Put your own path
         mockmvc.perform(MockMvcRequestBuilders.post("/products/JSON_load")
-                        .param("path", "C:\\Files\\data.json"))
-                .andExpect(status().isCreated());
+                        .param("path", "src/test/resources/data-test.json"))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.rows").value(4));
+
+        mockmvc.perform(MockMvcRequestBuilders.get("/products"))
+                .andExpect(jsonPath("$.*", hasSize(4)))
+                .andExpect(jsonPath("$[0].name").value("Ammospermophilus nelsoni"));
+    }
+
+    @Test
+    @DisplayName("Given a path to a file that is not a catalog, When perform post request /products/JSON_load, Then the catalog is left as it was")
+    void updateProductsFromJson_RollsBack() throws Exception {
+        Assertions.assertThrows(Exception.class, () -> mockmvc.perform(MockMvcRequestBuilders.post("/products/JSON_load")
+                .param("path", "src/test/resources/schema/product.json")));
+
+        mockmvc.perform(MockMvcRequestBuilders.get("/products"))
+                .andExpect(jsonPath("$.*", hasSize(13)));
+    }
+
+    @Test
+    @DisplayName("Given a category, a price range and a sort, When perform get request /products, Then the matching products are returned sorted")
+    void getProducts_Filtered() throws Exception {
+        mockmvc.perform(MockMvcRequestBuilders.get("/products")
+                        .param("category", "Libros")
+                        .param("minPrice", "20")
+                        .param("maxPrice", "100")
+                        .param("sort", "price,desc"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.*", hasSize(3)))
+                .andExpect(jsonPath("$[0].name").value("Nanice"))
+                .andExpect(jsonPath("$[1].id").value(2))
+                .andExpect(jsonPath("$[2].id").value(11))
+                .andExpect(jsonPath("$[2].finalPrice").value(21.16));
+    }
+
+    @Test
+    @DisplayName("When perform get request /products/categories/stats, Then the stats are computed by the database with the category discounts")
+    void getCategoryStats() throws Exception {
+        mockmvc.perform(MockMvcRequestBuilders.get("/products/categories/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.*", hasSize(6)))
+                .andExpect(jsonPath("$[?(@.category == 'Libros')].count").value(4))
+                .andExpect(jsonPath("$[?(@.category == 'Libros')].minFinalPrice").value(10.58))
+                .andExpect(jsonPath("$[?(@.category == 'Libros')].maxFinalPrice").value(85.0))
+                .andExpect(jsonPath("$[?(@.category == 'Libros')].avgFinalPrice").value(34.48));
+    }
+
+    @Test
+    @DisplayName("Given the products, When aggregating in SQL, Then the final prices match the ones the service calculates")
+    void getCategoryStats_MatchesServicePricing() {
+        Map<String, List<BigDecimal>> finalPrices = service.getAllProducts().stream().collect(Collectors.groupingBy(
+                ProductEntity::getCategory, Collectors.mapping(ProductEntity::getFinalPrice, Collectors.toList())));
+
+        for (CategoryStatsDTO stats : service.getCategoryStats()) {
+            List<BigDecimal> prices = finalPrices.get(stats.getCategory());
+            assertThat(stats.getCount()).isEqualTo(prices.size());
+            assertThat(stats.getMinFinalPrice()).isEqualByComparingTo(Collections.min(prices));
+            assertThat(stats.getMaxFinalPrice()).isEqualByComparingTo(Collections.max(prices));
+        }
+    }
+
+    @Test
+    @DisplayName("Given a prefix, When perform get request /products/search, Then the matching products are returned with their final price")
+    void searchProducts() throws Exception {
+        searchService.rebuild();
+
+        mockmvc.perform(MockMvcRequestBuilders.get("/products/search")
+                        .param("q", "author paco r")
+                        .param("prefix", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.*", hasSize(2)))
+                .andExpect(jsonPath("$[0].name").value("Los Surcos del Azar"))
+                .andExpect(jsonPath("$[0].finalPrice").value(21.16));
+    }
+
+    @Test
+    @DisplayName("Given a path and mode delta, When perform post request /products/JSON_load, Then only the differences are written and ids are kept")
+    void syncProductsFromJson() throws Exception {
+        mockmvc.perform(MockMvcRequestBuilders.post("/products/JSON_load")
+                        .param("path", "src/test/resources/data-sync-test.json")
+                        .param("mode", "delta"))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.inserted").value(1))
+                .andExpect(jsonPath("$.updated").value(1))
+                .andExpect(jsonPath("$.deleted").value(9))
+                .andExpect(jsonPath("$.unchanged").value(3));
+        assertThat(jdbcTemplate.queryForList("select type from product_outbox where product_id = 3", String.class))
+                .containsExactly("CART_UPDATE");
+        assertThat(jdbcTemplate.queryForObject("select count(*) from product_outbox where type in ('CART_DELETE', 'USER_DELETE')",
+                Integer.class)).isEqualTo(18);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from product_sync_match", Integer.class)).isZero();
+
+        mockmvc.perform(MockMvcRequestBuilders.get("/products"))
+                .andExpect(jsonPath("$.*", hasSize(5)));
+        mockmvc.perform(MockMvcRequestBuilders.get("/products/id/{id}", 3))
+                .andExpect(jsonPath("$.name").value("Pelota"))
+                .andExpect(jsonPath("$.price").value(12.5))
+                .andExpect(jsonPath("$.finalPrice").value(10.0));
     }
 
     @Test
@@ -237,6 +553,34 @@ class ProductIT {
                 .andExpect(status().isBadRequest());
     }
 
+    @Test
+    @DisplayName("Given a cart with enough stock, When perform post request /products/stock/reserve, Then every line is subtracted")
+    void reserveStock() throws Exception {
+        mockmvc.perform(MockMvcRequestBuilders.post("/products/stock/reserve")
+                        .content("[{\"id\": 1, \"units\": 10}, {\"id\": 3, \"units\": 4}]")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{id: 1, units: 10, reserved: true}, {id: 3, units: 4, reserved: true}]"));
+
+        mockmvc.perform(get("/products/id/{id}", 1)).andExpect(jsonPath("$.stock").value(80));
+        mockmvc.perform(get("/products/id/{id}", 3)).andExpect(jsonPath("$.stock").value(0));
+    }
+
+    @Test
+    @DisplayName("Given a cart with a line without stock, When perform post request /products/stock/reserve, Then no line is subtracted")
+    void reserveStock_NotEnoughStock() throws Exception {
+        mockmvc.perform(get("/products/id/{id}", 1)).andExpect(jsonPath("$.stock").value(90));
+
+        mockmvc.perform(MockMvcRequestBuilders.post("/products/stock/reserve")
+                        .content("[{\"id\": 1, \"units\": 10}, {\"id\": 3, \"units\": 5}]")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().json("[{id: 1, units: 10, reserved: true}, {id: 3, units: 5, reserved: false}]"));
+
+        mockmvc.perform(get("/products/id/{id}", 1)).andExpect(jsonPath("$.stock").value(90));
+        mockmvc.perform(get("/products/id/{id}", 3)).andExpect(jsonPath("$.stock").value(4));
+    }
+
     @Test
     @DisplayName("Given a Product, When perform post request /products, Then is expected to have status of 201, be a Json and have {\"id\":14,\"message\":\"DDBB updated\",\"status\":201}")
     void addNewProduct() throws Exception {
@@ -0,0 +1,58 @@
+package com.gftraining.microservice_product.integration_tests;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs against the schema built by the Liquibase changelog (no test profile) and checks the H2 query plans,
+ * so a migration that drops or renames an index makes the lookups fall back to a scan and fails here. The outbox
+ * dispatcher is off, as there is no cart nor user service to deliver to.
+ */
+@SpringBootTest(properties = "notifications.dispatcher-enabled=false")
+class ProductIndexIT {
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    @DisplayName("Given the migrated schema, When looking up products by name, Then the name index is used")
+    void findAllByName_UsesIndex() {
+        assertThat(explain("select * from product where name = 'Wonder'"))
+                .contains("IDX_PRODUCT_NAME")
+                .doesNotContain("tableScan");
+    }
+
+    @Test
+    @DisplayName("Given the migrated schema, When looking up products by category, Then a category index is used")
+    void findByCategory_UsesIndex() {
+        assertThat(explain("select * from product where category = 'Libros'"))
+                .containsPattern("IDX_PRODUCT_CATEGORY(_PRICE)?")
+                .doesNotContain("tableScan");
+    }
+
+    @Test
+    @DisplayName("Given the migrated schema, When filtering products by category and price range, Then the composite index is used")
+    void findByCategoryAndPrice_UsesIndex() {
+        assertThat(explain("select * from product where category = 'Libros' and price between 10 and 50 order by price"))
+                .contains("IDX_PRODUCT_CATEGORY_PRICE")
+                .doesNotContain("tableScan");
+    }
+
+    @Test
+    @DisplayName("Given the migrated schema, When the catalog sync looks up a batch of names, Then the name index is used")
+    void findUnmatchedByName_UsesIndex() {
+        assertThat(explain("select * from product p where p.name in ('Wonder', 'Pelota') and p.id <= 100 and not exists " +
+                "(select 1 from product_sync_match m where m.sync_id = 'sync' and m.product_id = p.id) order by p.id"))
+                .contains("IDX_PRODUCT_NAME")
+                .doesNotContain("tableScan");
+    }
+
+    private String explain(String query) {
+        return jdbcTemplate.queryForObject("explain " + query, String.class);
+    }
+}
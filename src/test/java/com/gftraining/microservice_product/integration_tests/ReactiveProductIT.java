@@ -0,0 +1,83 @@
+package com.gftraining.microservice_product.integration_tests;
+
+import com.gftraining.microservice_product.model.ProductEntity;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+
+import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.BEFORE_TEST_METHOD;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "spring.sql.init.mode=never")
+@ActiveProfiles({"reactive", "test"})
+@Sql(scripts = "/data-test.sql", executionPhase = BEFORE_TEST_METHOD)
+class ReactiveProductIT {
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Test
+    @DisplayName("When perform get request /products accepting NDJSON, Then every product is streamed one per line, in id order")
+    void getAll_StreamsNdjson() {
+        Flux<ProductEntity> products = webTestClient.get().uri("/products")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(ProductEntity.class)
+                .getResponseBody();
+
+        StepVerifier.create(products)
+                .expectNextMatches(product -> product.getId() == 1L && product.getFinalPrice().equals(new BigDecimal("10.58")))
+                .expectNextCount(12)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Given a limit, When perform get request /products, Then the products after the id are returned as a JSON array")
+    void getProductsPage() {
+        webTestClient.get().uri("/products?after=2&limit=2")
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].id").isEqualTo(3)
+                .jsonPath("$[1].id").isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("Given an id, When perform get request /products/id/{id}, Then the product is returned or 404 if it does not exist")
+    void getProductById() {
+        webTestClient.get().uri("/products/id/{id}", 1)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.name").isEqualTo("Wonder")
+                .jsonPath("$.finalPrice").isEqualTo(10.58);
+
+        webTestClient.get().uri("/products/id/{id}", 200)
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody()
+                .jsonPath("$.message").isEqualTo("Product with id: 200 not found.");
+    }
+
+    @Test
+    @DisplayName("Given a name, When perform get request /products/name/{name}, Then the products with that name are returned")
+    void getProductByName() {
+        webTestClient.get().uri("/products/name/{name}", "Los Surcos del Azar")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[0].id").isEqualTo(2);
+    }
+}
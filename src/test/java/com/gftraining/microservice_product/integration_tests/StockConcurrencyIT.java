@@ -0,0 +1,133 @@
+package com.gftraining.microservice_product.integration_tests;
+
+import com.gftraining.microservice_product.model.ProductEntity;
+import com.gftraining.microservice_product.repositories.ProductRepository;
+import com.gftraining.microservice_product.services.ProductService;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.gftraining.microservice_product.configuration.CacheConfig.PRODUCTS_CACHE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.BEFORE_TEST_METHOD;
+
+@Slf4j
+@SpringBootTest
+@ActiveProfiles("test")
+@Sql(scripts = "/data-test.sql", executionPhase = BEFORE_TEST_METHOD)
+class StockConcurrencyIT {
+    private static final int THREADS = 32;
+    private static final long PRODUCT_ID = 3L;
+
+    @Autowired
+    ProductService service;
+    @Autowired
+    ProductRepository repository;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+    @Autowired
+    CacheManager cacheManager;
+
+    @BeforeEach
+    void clearCache() {
+        cacheManager.getCache(PRODUCTS_CACHE).clear();
+    }
+
+    @Test
+    @DisplayName("Given many parallel checkouts of the same product, When updating the stock, Then it is never oversold")
+    void updateStock_NoOversell() throws Exception {
+        setStock(100);
+        AtomicInteger sold = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+
+        runInParallel(1000, () -> {
+            try {
+                service.updateStock(1, PRODUCT_ID);
+                sold.incrementAndGet();
+            } catch (ResponseStatusException e) {
+                rejected.incrementAndGet();
+            }
+        });
+
+        assertThat(sold.get()).isEqualTo(100);
+        assertThat(rejected.get()).isEqualTo(900);
+        assertThat(getStock()).isEqualTo(100 - sold.get()).isNotNegative();
+    }
+
+    @Test
+    @DisplayName("Given enough stock for every checkout, When comparing with a read-modify-write, Then every decrement is applied once")
+    void updateStock_Throughput() throws Exception {
+        int decrements = 5000;
+        int initialStock = decrements + 100;
+
+        setStock(initialStock);
+        AtomicInteger applied = new AtomicInteger();
+        long atomicNanos = runInParallel(decrements, () -> {
+            service.updateStock(1, PRODUCT_ID);
+            applied.incrementAndGet();
+        });
+        int atomicStock = getStock();
+
+        // The baseline is the load and save updateStock used to do. findById is not cached (findCachedById is), so
+        // every decrement reads the row from the database as before.
+        setStock(initialStock);
+        long readModifyWriteNanos = runInParallel(decrements, () -> {
+            ProductEntity product = repository.findById(PRODUCT_ID).orElseThrow();
+            product.setStock(product.getStock() - 1);
+            repository.save(product);
+        });
+        int readModifyWriteStock = getStock();
+
+        log.info("Conditional update: {} decrements/s, {} lost updates",
+                decrements * 1_000_000_000L / atomicNanos, atomicStock - (initialStock - decrements));
+        log.info("Read-modify-write: {} decrements/s, {} lost updates",
+                decrements * 1_000_000_000L / readModifyWriteNanos, readModifyWriteStock - (initialStock - decrements));
+
+        assertThat(applied.get()).isEqualTo(decrements);
+        assertThat(atomicStock).isEqualTo(initialStock - applied.get()).isNotNegative();
+    }
+
+    private long runInParallel(int tasks, Runnable task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>(tasks);
+        for (int i = 0; i < tasks; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                task.run();
+                return null;
+            }));
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+        long elapsed = System.nanoTime() - begin;
+        executor.shutdown();
+        return elapsed;
+    }
+
+    private void setStock(int stock) {
+        jdbcTemplate.update("update product set stock = ? where id = ?", stock, PRODUCT_ID);
+        cacheManager.getCache(PRODUCTS_CACHE).clear();
+    }
+
+    private int getStock() {
+        return jdbcTemplate.queryForObject("select stock from product where id = ?", Integer.class, PRODUCT_ID);
+    }
+}
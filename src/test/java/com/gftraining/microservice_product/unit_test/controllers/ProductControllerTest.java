@@ -3,10 +3,21 @@ package com.gftraining.microservice_product.unit_test.controllers;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.gftraining.microservice_product.configuration.FeatureFlagsConfig;
+import com.gftraining.microservice_product.configuration.ResponseCacheConfig;
 import com.gftraining.microservice_product.controllers.ProductController;
+import com.gftraining.microservice_product.controllers.ProductResponseCache;
+import com.gftraining.microservice_product.model.CategoryStatsDTO;
 import com.gftraining.microservice_product.model.ProductDTO;
 import com.gftraining.microservice_product.model.ProductEntity;
+import com.gftraining.microservice_product.model.ProductVersionDTO;
+import com.gftraining.microservice_product.model.ProductsByIdDTO;
+import com.gftraining.microservice_product.model.StockReservationDTO;
+import com.gftraining.microservice_product.model.StockReservationResultDTO;
+import com.gftraining.microservice_product.services.CatalogImportService;
+import com.gftraining.microservice_product.services.CatalogVersion;
 import com.gftraining.microservice_product.services.ProductService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -14,12 +25,13 @@ import org.junit.jupiter.params.provider.ValueSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
-import org.springframework.http.HttpStatus;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
-import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.List;
 
@@ -32,6 +44,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 
 
 @WebMvcTest(ProductController.class)
+@Import({ProductResponseCache.class, CatalogVersion.class, ResponseCacheConfig.class, SimpleMeterRegistry.class})
 class ProductControllerTest {
 
     final List<ProductEntity> productList = Arrays.asList(
@@ -43,12 +56,22 @@ class ProductControllerTest {
             new ProductEntity(2L, "Playmobil", "Juguetes", "juguetes de plástico", new BigDecimal("40.00"), 100)
     );
     final ProductEntity productEntity = new ProductEntity(1L, "Pelota", "Juguetes", "pelota futbol", new BigDecimal("19.99"), 24);
+    final ProductVersionDTO productVersion = new ProductVersionDTO(1L, 2, Instant.parse("2023-05-04T10:15:30Z"));
     @Autowired
     private MockMvc mockmvc;
     @MockBean
     private ProductService productService;
     @MockBean
+    private CatalogImportService catalogImportService;
+    @MockBean
     private FeatureFlagsConfig featureFlag;
+    @Autowired
+    private ProductResponseCache responseCache;
+
+    @BeforeEach
+    void clearResponses() {
+        responseCache.clear();
+    }
 
     public static String asJsonString(final Object obj) {
         try {
@@ -68,6 +91,61 @@ class ProductControllerTest {
                 .andReturn();
     }
 
+    @Test
+    @DisplayName("Given a category, a price range and a sort, When perform the get request /products, Then return the filtered products from the service")
+    void getProducts_Filtered() throws Exception {
+        given(productService.getProducts("Juguetes", new BigDecimal("10"), null, "price,desc")).willReturn(productList);
+
+        mockmvc.perform(get("/products").param("category", "Juguetes").param("minPrice", "10").param("sort", "price,desc"))
+                .andExpect(status().isOk())
+                .andExpect(content().json(asJsonString(productList)));
+        verify(productService, never()).getAllProducts();
+    }
+
+    @Test
+    @DisplayName("When perform the get request /products/categories/stats, Then return the stats of every category")
+    void getCategoryStats() throws Exception {
+        List<CategoryStatsDTO> stats = List.of(new CategoryStatsDTO("Juguetes", 1, 100,
+                new BigDecimal("32.00"), new BigDecimal("32.00"), new BigDecimal("32.00")));
+        given(productService.getCategoryStats()).willReturn(stats);
+
+        mockmvc.perform(get("/products/categories/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].category").value("Juguetes"))
+                .andExpect(jsonPath("$[0].avgFinalPrice").value(32.00));
+    }
+
+    @Test
+    @DisplayName("Given an after id and a limit, When perform the get request /products, Then return the page from the service")
+    void getProductsPage() throws Exception {
+        given(productService.getProductsPage(0L, 2)).willReturn(productList);
+
+        mockmvc.perform(get("/products").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(content().json(asJsonString(productList)));
+    }
+
+    @Test
+    @DisplayName("Given a query, When perform the get request /products/search, Then return the products found with the default limit")
+    void searchProducts() throws Exception {
+        given(productService.searchProducts("play", true, 10)).willReturn(productList);
+
+        mockmvc.perform(get("/products/search").param("q", "play").param("prefix", "true"))
+                .andExpect(status().isOk())
+                .andExpect(content().json(asJsonString(productList)));
+    }
+
+    @Test
+    @DisplayName("Given a list of ids, When perform the get request /products, Then return the products and the missing ids")
+    void getProductsById() throws Exception {
+        ProductsByIdDTO productsById = new ProductsByIdDTO(productList, List.of(3L));
+        given(productService.getProductsById(List.of(1L, 2L, 3L))).willReturn(productsById);
+
+        mockmvc.perform(get("/products").param("ids", "1,2,3"))
+                .andExpect(status().isOk())
+                .andExpect(content().json(asJsonString(productsById)));
+    }
+
     @Test
     @DisplayName("Given a product name, When calling service to find products by name, Then a list of products with that name is returned")
     void getProductByName() throws Exception {
@@ -81,13 +159,31 @@ class ProductControllerTest {
     @Test
     @DisplayName("given a product id, when calling service to find products by id, then the product is returned")
     void getProductById() throws Exception {
+        given(productService.getProductVersion(1L)).willReturn(productVersion);
         given(productService.getProductById(1L)).willReturn(productEntity);
 
         mockmvc.perform(get("/products/id/{id}", 1L))
                 .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andExpect(header().string(HttpHeaders.LAST_MODIFIED, "Thu, 04 May 2023 10:15:30 GMT"))
                 .andExpect(content().json(asJsonString(productEntity)));
     }
 
+    @Test
+    @DisplayName("given the ETag of a product, when its version has not changed, then 304 is returned without reading the product")
+    void getProductById_IfNoneMatch_NotModified() throws Exception {
+        given(productService.getProductVersion(1L)).willReturn(productVersion);
+        String eTag = mockmvc.perform(get("/products/id/{id}", 1L))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        clearInvocations(productService);
+
+        mockmvc.perform(get("/products/id/{id}", 1L).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        verify(productService, never()).getProductById(anyLong());
+    }
+
     @ParameterizedTest
     @ValueSource(booleans = {false, true})
     @DisplayName("Given any long and a json productEntity, When perform the put request /products/{id} and callCart flag is disabled, " +
@@ -95,15 +191,12 @@ class ProductControllerTest {
     void putProductById_CallCartDisabled(boolean flag) throws Exception {
         given(productService.getProductById(anyLong())).willReturn(productEntity);
         when(featureFlag.isCallCartEnabled()).thenReturn(flag);
-        when(productService.patchCartProducts(any(),anyLong())).thenReturn(Mono.just("{\"cartsChanged\":1}"));
 
         mockmvc.perform(put("/products/{id}", 1L).contentType(MediaType.APPLICATION_JSON)
                         .content(new ObjectMapper().writeValueAsString(productEntity)))
                 .andExpect(status().isOk());
 
         assertThat(productService.getProductById(1L)).isEqualTo(productEntity);
-
-        if (flag) verify(productService).patchCartProducts(any(),anyLong());
     }
 
     @Test
@@ -120,6 +213,31 @@ class ProductControllerTest {
         verify(productService).updateStock(5, 1L);
     }
 
+    @Test
+    @DisplayName("Given a list of lines, When perform the post request /products/stock/reserve, Then return the result of every line")
+    void reserveStock() throws Exception {
+        List<StockReservationDTO> lines = List.of(new StockReservationDTO(1L, 2), new StockReservationDTO(2L, 3));
+        List<StockReservationResultDTO> results = List.of(new StockReservationResultDTO(1L, 2, true), new StockReservationResultDTO(2L, 3, true));
+        given(productService.reserveStock(lines)).willReturn(results);
+
+        mockmvc.perform(post("/products/stock/reserve")
+                        .content(asJsonString(lines))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json(asJsonString(results)));
+    }
+
+    @Test
+    @DisplayName("Given a line with negative units, When perform the post request /products/stock/reserve, Then return bad request")
+    void reserveStock_BadRequest() throws Exception {
+        mockmvc.perform(post("/products/stock/reserve")
+                        .content(asJsonString(List.of(new StockReservationDTO(1L, -2))))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+
+        verify(productService, never()).reserveStock(any());
+    }
+
     @ParameterizedTest
     @ValueSource(booleans = {false, true})
     @DisplayName("Given an id, When perform the delete request /products/{id} and callcart and calluser flags are disabled, " +
@@ -128,18 +246,11 @@ class ProductControllerTest {
         when(featureFlag.isCallCartEnabled()).thenReturn(flag);
         when(featureFlag.isCallUserEnabled()).thenReturn(flag);
 
-        when(productService.deleteCartProducts(anyLong())).thenReturn(Mono.just("{\"cartsChanged\":1}"));
-        when(productService.deleteUserProducts(anyLong())).thenReturn(Mono.just(HttpStatus.NO_CONTENT));
 
         mockmvc.perform(delete("/products/{id}", 1L))
                 .andExpect(status().isOk());
 
         verify(productService).deleteProductById(anyLong());
-
-        if(flag) {
-            verify(productService).deleteUserProducts(anyLong());
-            verify(productService).deleteCartProducts(anyLong());
-        }
     }
 
     @Test
@@ -176,6 +287,6 @@ class ProductControllerTest {
                         .param("path", "C:\\Files\\data_test.json"))
                 .andExpect(status().isCreated());
 
-        verify(productService).updateProductsFromJson("C:\\Files\\data_test.json");
+        verify(catalogImportService).importFromJson("C:\\Files\\data_test.json");
     }
 }
@@ -0,0 +1,163 @@
+package com.gftraining.microservice_product.unit_test.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gftraining.microservice_product.configuration.CategoriesConfig;
+import com.gftraining.microservice_product.configuration.ResponseCacheConfig;
+import com.gftraining.microservice_product.controllers.ProductResponseCache;
+import com.gftraining.microservice_product.model.ProductEntity;
+import com.gftraining.microservice_product.model.ProductVersionDTO;
+import com.gftraining.microservice_product.services.CatalogVersion;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProductResponseCacheTest {
+
+    CatalogVersion catalogVersion = new CatalogVersion();
+    CategoriesConfig categoriesConfig = new CategoriesConfig();
+    ObjectMapper objectMapper = new ObjectMapper();
+    AtomicInteger loads = new AtomicInteger();
+    List<ProductEntity> products = new ArrayList<>();
+    ProductResponseCache responseCache;
+
+    @BeforeEach
+    void setUp() {
+        categoriesConfig.setCategories(Map.of("Juguetes", 20));
+        ResponseCacheConfig responseCacheConfig = new ResponseCacheConfig();
+        responseCacheConfig.setMinCompressSize(DataSize.ofBytes(256));
+        responseCache = new ProductResponseCache(catalogVersion, categoriesConfig, responseCacheConfig, objectMapper,
+                new SimpleMeterRegistry());
+
+        for (long id = 1; id <= 20; id++) {
+            products.add(new ProductEntity(id, "Pelota", "Juguetes", "pelota de futbol", new BigDecimal("19.99"), 24));
+        }
+    }
+
+    @Test
+    @DisplayName("Given a cached list, When getting it again at the same catalog version, Then the bytes are served without loading it")
+    void get_SameVersion_ServedFromCache() throws IOException {
+        ResponseEntity<byte[]> first = responseCache.get(request(null), load(), "getAll");
+        ResponseEntity<byte[]> second = responseCache.get(request(null), load(), "getAll");
+
+        assertThat(loads).hasValue(1);
+        assertThat(second.getBody()).isSameAs(first.getBody());
+        assertThat(second.getBody()).isEqualTo(objectMapper.writeValueAsBytes(products));
+    }
+
+    @Test
+    @DisplayName("Given a cached list, When the catalog version is bumped, Then the list is loaded again")
+    void get_VersionBumped_LoadedAgain() {
+        responseCache.get(request(null), load(), "getByName", "Pelota");
+        catalogVersion.bumpAfterCompletion();
+        responseCache.get(request(null), load(), "getByName", "Pelota");
+        responseCache.get(request(null), load(), "getByName", "Balon");
+
+        assertThat(loads).hasValue(3);
+    }
+
+    @Test
+    @DisplayName("Given a cached list, When the discounts change, Then the list is loaded again, and When they are set back, Then it is served from the cache")
+    void get_DiscountsChanged_LoadedAgain() {
+        responseCache.get(request(null), load(), "getAll");
+        categoriesConfig.setCategories(Map.of("Juguetes", 30));
+        responseCache.get(request(null), load(), "getAll");
+        categoriesConfig.setCategories(Map.of("Juguetes", 20));
+        responseCache.get(request(null), load(), "getAll");
+
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    @DisplayName("Given a list over min-compress-size, When the client accepts gzip, Then the precompressed bytes are served")
+    void get_AcceptsGzip_ServesCompressed() throws IOException {
+        ResponseEntity<byte[]> identity = responseCache.get(request(null), load(), "getAll");
+        ResponseEntity<byte[]> compressed = responseCache.get(request("deflate, gzip;q=0.8"), load(), "getAll");
+        ResponseEntity<byte[]> refused = responseCache.get(request("gzip;q=0"), load(), "getAll");
+
+        assertThat(identity.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)).isFalse();
+        assertThat(compressed.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        assertThat(compressed.getHeaders().getVary()).containsExactly(HttpHeaders.ACCEPT_ENCODING);
+        assertThat(compressed.getBody()).hasSizeLessThan(identity.getBody().length);
+        assertThat(new GZIPInputStream(new ByteArrayInputStream(compressed.getBody())).readAllBytes())
+                .isEqualTo(identity.getBody());
+        assertThat(refused.getBody()).isSameAs(identity.getBody());
+    }
+
+    @Test
+    @DisplayName("Given a list already sent, When polling it with its ETag, Then 304 is answered until the catalog version is bumped")
+    void get_IfNoneMatch_NotModifiedUntilBumped() {
+        MockHttpServletResponse first = new MockHttpServletResponse();
+        responseCache.get(new ServletWebRequest(new MockHttpServletRequest("GET", "/products"), first), load(), "getAll");
+        String eTag = first.getHeader(HttpHeaders.ETAG);
+
+        MockHttpServletRequest poll = new MockHttpServletRequest("GET", "/products");
+        poll.addHeader(HttpHeaders.IF_NONE_MATCH, eTag);
+        MockHttpServletResponse unchanged = new MockHttpServletResponse();
+        ResponseEntity<byte[]> notModified = responseCache.get(new ServletWebRequest(poll, unchanged), load(), "getAll");
+        catalogVersion.bumpAfterCompletion();
+        MockHttpServletResponse changed = new MockHttpServletResponse();
+        ResponseEntity<byte[]> modified = responseCache.get(new ServletWebRequest(poll, changed), load(), "getAll");
+
+        assertThat(eTag).startsWith("\"c");
+        assertThat(notModified).isNull();
+        assertThat(unchanged.getStatus()).isEqualTo(HttpStatus.NOT_MODIFIED.value());
+        assertThat(modified.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(changed.getHeader(HttpHeaders.ETAG)).isNotEqualTo(eTag);
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    @DisplayName("Given a product version, When the client already has it, Then it is not modified, and When it has another, Then it is")
+    void checkNotModified_ProductVersion() {
+        ProductVersionDTO version = new ProductVersionDTO(1L, 3, Instant.parse("2023-05-04T10:15:30Z"));
+        MockHttpServletResponse first = new MockHttpServletResponse();
+        boolean notModifiedFirst = responseCache.checkNotModified(
+                new ServletWebRequest(new MockHttpServletRequest("GET", "/products"), first), version);
+        String eTag = first.getHeader(HttpHeaders.ETAG);
+
+        MockHttpServletRequest poll = new MockHttpServletRequest("GET", "/products");
+        poll.addHeader(HttpHeaders.IF_NONE_MATCH, eTag);
+        boolean notModified = responseCache.checkNotModified(new ServletWebRequest(poll), version);
+        version.setVersion(4);
+        boolean notModifiedAfterUpdate = responseCache.checkNotModified(new ServletWebRequest(poll), version);
+
+        assertThat(notModifiedFirst).isFalse();
+        assertThat(first.getHeader(HttpHeaders.LAST_MODIFIED)).isEqualTo("Thu, 04 May 2023 10:15:30 GMT");
+        assertThat(notModified).isTrue();
+        assertThat(notModifiedAfterUpdate).isFalse();
+    }
+
+    private static ServletWebRequest request(String acceptEncoding) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/products");
+        if (acceptEncoding != null) request.addHeader(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+        return new ServletWebRequest(request, new MockHttpServletResponse());
+    }
+
+    private Supplier<List<ProductEntity>> load() {
+        return () -> {
+            loads.incrementAndGet();
+            return products;
+        };
+    }
+}
@@ -0,0 +1,88 @@
+package com.gftraining.microservice_product.unit_test.controllers;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.gftraining.microservice_product.configuration.SamplingTurboFilter;
+import com.gftraining.microservice_product.controllers.ProductController;
+import com.gftraining.microservice_product.controllers.RequestSummaryLogger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.method.HandlerMethod;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class RequestSummaryLoggerTest {
+
+    RequestSummaryLogger requestSummaryLogger = new RequestSummaryLogger();
+    Logger logger = (Logger) LoggerFactory.getLogger(RequestSummaryLogger.class);
+    ListAppender<ILoggingEvent> events = new ListAppender<>();
+    SamplingTurboFilter samplingFilter = new SamplingTurboFilter();
+    HandlerMethod getAll;
+
+    @BeforeEach
+    void setUp() throws NoSuchMethodException {
+        events.start();
+        logger.addAppender(events);
+        getAll = new HandlerMethod(mock(ProductController.class),
+                ProductController.class.getMethod("getAll", String.class, BigDecimal.class, BigDecimal.class, String.class,
+                        WebRequest.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        logger.detachAppender(events);
+        logger.getLoggerContext().getTurboFilterList().remove(samplingFilter);
+    }
+
+    @Test
+    @DisplayName("Given a list written as the body, When the request completes, Then one event summarizes it")
+    void afterCompletion_LogsSummary() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/products");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        handle(request, response, List.of(1, 2, 3));
+
+        assertThat(events.list).singleElement()
+                .extracting(ILoggingEvent::getFormattedMessage).asString()
+                .startsWith("op=getAll method=GET uri=/products status=200 rows=3 durationUs=");
+    }
+
+    @Test
+    @DisplayName("Given a sampling rate of 2 for the summaries, When four requests complete, Then two are logged")
+    void afterCompletion_Sampled() {
+        LoggerContext context = logger.getLoggerContext();
+        samplingFilter.setLogger(RequestSummaryLogger.class.getName());
+        samplingFilter.setRate(2);
+        samplingFilter.setContext(context);
+        samplingFilter.start();
+        context.addTurboFilter(samplingFilter);
+
+        for (int i = 0; i < 4; i++) {
+            handle(new MockHttpServletRequest("GET", "/products"), new MockHttpServletResponse(), List.of());
+        }
+
+        assertThat(events.list).hasSize(2);
+    }
+
+    private void handle(MockHttpServletRequest request, MockHttpServletResponse response, Object body) {
+        requestSummaryLogger.preHandle(request, response, getAll);
+        requestSummaryLogger.beforeBodyWrite(body, null, MediaType.APPLICATION_JSON, null,
+                new ServletServerHttpRequest(request), new ServletServerHttpResponse(response));
+        requestSummaryLogger.afterCompletion(request, response, getAll, null);
+    }
+}
@@ -0,0 +1,188 @@
+package com.gftraining.microservice_product.unit_test.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gftraining.microservice_product.configuration.CatalogImportConfig;
+import com.gftraining.microservice_product.model.CatalogImportResultDTO;
+import com.gftraining.microservice_product.model.CatalogSyncResultDTO;
+import com.gftraining.microservice_product.model.ProductEntity;
+import com.gftraining.microservice_product.repositories.ProductJdbcRepository;
+import com.gftraining.microservice_product.services.CatalogImportService;
+import com.gftraining.microservice_product.services.CatalogVersion;
+import com.gftraining.microservice_product.services.ProductNotificationPublisher;
+import com.gftraining.microservice_product.services.ProductPricingService;
+import com.gftraining.microservice_product.services.ProductSearchService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CatalogImportServiceTest {
+
+    @Mock
+    ProductJdbcRepository jdbcRepository;
+    @Mock
+    ProductPricingService pricingService;
+    @Mock
+    ProductSearchService searchService;
+    @Mock
+    ProductNotificationPublisher notificationPublisher;
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    CatalogImportService service;
+    String path;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        CatalogImportConfig catalogImportConfig = new CatalogImportConfig();
+        catalogImportConfig.setBatchSize(3);
+        catalogImportConfig.setPipelineDepth(1);
+        catalogImportConfig.setMappedRegionSize(DataSize.ofBytes(64));
+        service = new CatalogImportService(jdbcRepository, pricingService, searchService, catalogImportConfig, new ObjectMapper(),
+                new CatalogVersion(), notificationPublisher, meterRegistry);
+        path = new ClassPathResource("data-test.json").getFile().getPath();
+    }
+
+    @Test
+    @DisplayName("Given a path, When calling importFromJson, Then the catalog is replaced in batches of the configured size")
+    void importFromJson() throws IOException {
+        given(jdbcRepository.insertAll(anyList())).willAnswer(invocation -> invocation.<List<?>>getArgument(0).size());
+
+        CatalogImportResultDTO result = service.importFromJson(path);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<ProductEntity>> batches = ArgumentCaptor.forClass(List.class);
+        verify(jdbcRepository).deleteAll();
+        verify(jdbcRepository, times(2)).insertAll(batches.capture());
+        assertThat(batches.getAllValues()).extracting(List::size).containsExactly(3, 1);
+        assertThat(batches.getAllValues().get(0).get(0).getName()).isEqualTo("Ammospermophilus nelsoni");
+        assertThat(result.getRows()).isEqualTo(4);
+        verify(pricingService).clearAfterCommit();
+        verify(searchService).rebuildAfterCommit();
+    }
+
+    @Test
+    @DisplayName("Given a gzip compressed catalog, When calling importFromJson, Then it is decompressed while reading")
+    void importFromJson_Gzip(@TempDir Path tempDir) throws IOException {
+        Path gzipPath = tempDir.resolve("data-test.json.gz");
+        try (OutputStream gzip = new GZIPOutputStream(Files.newOutputStream(gzipPath))) {
+            Files.copy(Paths.get(path), gzip);
+        }
+        given(jdbcRepository.insertAll(anyList())).willAnswer(invocation -> invocation.<List<?>>getArgument(0).size());
+
+        assertThat(service.importFromJson(gzipPath.toString()).getRows()).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("Given a malformed catalog, When calling importFromJson, Then the parse error jumps to the caller")
+    void importFromJson_Malformed(@TempDir Path tempDir) throws IOException {
+        Path malformedPath = tempDir.resolve("malformed.json");
+        Files.writeString(malformedPath, "[{\"name\": \"Pelota\", \"stock\": ");
+
+        Assertions.assertThrows(IOException.class, () -> service.importFromJson(malformedPath.toString()));
+    }
+
+    @Test
+    @DisplayName("Given a path that does not exist, When calling importFromJson, Then an exception jumps and nothing is inserted")
+    void importFromJson_FileNotFound() {
+        Assertions.assertThrows(IOException.class, () -> service.importFromJson("not-found.json"));
+
+        verify(jdbcRepository, never()).insertAll(anyList());
+    }
+
+    @Test
+    @DisplayName("Given an insert failing while the parser waits on a full queue, When calling importFromJson, Then the error jumps and the parser thread ends")
+    void importFromJson_InsertFails_ParserEnds(@TempDir Path tempDir) throws IOException, InterruptedException {
+        Path largePath = tempDir.resolve("large.json");
+        StringJoiner products = new StringJoiner(",", "[", "]");
+        for (int i = 0; i < 100; i++) {
+            products.add("{\"name\": \"Pelota " + i + "\", \"category\": \"Juguetes\", \"description\": \"pelota\", " +
+                    "\"price\": 10.00, \"stock\": 1}");
+        }
+        Files.writeString(largePath, products.toString());
+        given(jdbcRepository.insertAll(anyList())).willThrow(new IllegalStateException("Database unavailable"));
+
+        Assertions.assertThrows(IllegalStateException.class, () -> service.importFromJson(largePath.toString()));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (parserAlive() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(parserAlive()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Given a catalog with new, changed, equal and missing products, When calling syncFromJson, Then only the differences are written")
+    void syncFromJson() throws IOException {
+        List<ProductEntity> currentProducts = List.of(
+                new ProductEntity(1L, "Ammospermophilus nelsoni", "Juguetes", "amet diam", new BigDecimal("47.70"), 1),
+                new ProductEntity(2L, "Ovibos moschatus", "Juguetes", "eros viverra eget congue eget semper rutrum nulla nunc", new BigDecimal("757.10"), 20),
+                new ProductEntity(3L, "Pelota", "Juguetes", "Pelota del Barça", new BigDecimal("10.00"), 4));
+        given(jdbcRepository.maxId()).willReturn(3L);
+        given(jdbcRepository.findUnmatchedByName(anyString(), anyCollection(), eq(3L)))
+                .willAnswer(invocation -> currentProducts.stream()
+                        .filter(product -> invocation.<Collection<String>>getArgument(1).contains(product.getName()))
+                        .collect(Collectors.toList()));
+        given(jdbcRepository.findUnmatchedIds(anyString(), anyLong(), eq(3L), eq(3))).willReturn(List.of(3L), List.of());
+        given(jdbcRepository.insertAll(anyList())).willAnswer(invocation -> invocation.<List<?>>getArgument(0).size());
+        given(jdbcRepository.updateAll(anyList())).willAnswer(invocation -> invocation.<List<?>>getArgument(0).size());
+        given(jdbcRepository.deleteAllById(anyList())).willAnswer(invocation -> invocation.<List<?>>getArgument(0).size());
+
+        CatalogSyncResultDTO result = service.syncFromJson(path);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<ProductEntity>> inserts = ArgumentCaptor.forClass(List.class);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<ProductEntity>> updates = ArgumentCaptor.forClass(List.class);
+        verify(jdbcRepository).insertAll(inserts.capture());
+        verify(jdbcRepository).updateAll(updates.capture());
+        verify(jdbcRepository).deleteAllById(List.of(3L));
+        verify(jdbcRepository, never()).deleteAll();
+        verify(jdbcRepository, never()).forEach(any());
+        verify(jdbcRepository).markMatched(anyString(), eq(List.of(1L, 2L)));
+        verify(jdbcRepository).findUnmatchedIds(anyString(), eq(3L), eq(3L), eq(3));
+        verify(jdbcRepository).clearMatched(anyString());
+        assertThat(inserts.getValue()).extracting(ProductEntity::getName).containsExactly("Mycteria ibis", "Cervus duvauceli");
+        assertThat(updates.getValue()).extracting(ProductEntity::getId, ProductEntity::getStock).containsExactly(tuple(2L, 2));
+        verify(pricingService).evict(2L);
+        verify(pricingService).evict(3L);
+        verify(notificationPublisher).cartProductUpdated(updates.getValue().get(0));
+        verify(notificationPublisher).cartProductDeleted(3L);
+        verify(notificationPublisher).userProductDeleted(3L);
+        verifyNoMoreInteractions(notificationPublisher);
+        assertThat(result).extracting(CatalogSyncResultDTO::getInserted, CatalogSyncResultDTO::getUpdated,
+                CatalogSyncResultDTO::getDeleted, CatalogSyncResultDTO::getUnchanged).containsExactly(2L, 1L, 1L, 1L);
+    }
+
+    private static boolean parserAlive() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .anyMatch(thread -> thread.getName().equals("catalog-parser") && thread.isAlive());
+    }
+}
@@ -0,0 +1,81 @@
+package com.gftraining.microservice_product.unit_test.services;
+
+import com.gftraining.microservice_product.configuration.ServicesUrl;
+import com.gftraining.microservice_product.services.DownstreamGuard;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DownstreamGuardTest {
+
+    CircuitBreakerRegistry circuitBreakerRegistry;
+    SimpleMeterRegistry meterRegistry;
+    DownstreamGuard downstreamGuard;
+
+    @BeforeEach
+    void setUp() {
+        circuitBreakerRegistry = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+                .slidingWindowSize(4)
+                .minimumNumberOfCalls(4)
+                .failureRateThreshold(50)
+                .waitDurationInOpenState(Duration.ofMinutes(1))
+                .build());
+        BulkheadRegistry bulkheadRegistry = BulkheadRegistry.of(BulkheadConfig.custom()
+                .maxConcurrentCalls(1)
+                .maxWaitDuration(Duration.ZERO)
+                .build());
+        meterRegistry = new SimpleMeterRegistry();
+        downstreamGuard = new DownstreamGuard(circuitBreakerRegistry, bulkheadRegistry, meterRegistry);
+    }
+
+    @Test
+    @DisplayName("Given a target failing most calls, When calling it again, Then the circuit is open and the call fails without reaching it")
+    void guard_OpensCircuitOnFailures() {
+        AtomicInteger calls = new AtomicInteger();
+        Mono<Object> failing = Mono.defer(() -> {
+            calls.incrementAndGet();
+            return Mono.error(new IllegalStateException("cart down"));
+        });
+        for (int i = 0; i < 4; i++) {
+            StepVerifier.create(downstreamGuard.guard(ServicesUrl.CART, failing)).expectError(IllegalStateException.class).verify();
+        }
+
+        StepVerifier.create(downstreamGuard.guard(ServicesUrl.CART, failing))
+                .expectErrorMatches(DownstreamGuard::isRejected)
+                .verify();
+
+        assertThat(calls).hasValue(4);
+        assertThat(circuitBreakerRegistry.circuitBreaker(ServicesUrl.CART).getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(circuitBreakerRegistry.circuitBreaker(ServicesUrl.USER).getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(meterRegistry.counter("resilience4j.circuitbreaker.transitions", "name", ServicesUrl.CART,
+                "from", "CLOSED", "to", "OPEN").count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Given a target with all its concurrent calls in flight, When calling it again, Then the bulkhead rejects the call")
+    void guard_RejectsCallsOverBulkhead() {
+        StepVerifier.create(downstreamGuard.guard(ServicesUrl.USER, Mono.never()))
+                .expectSubscription()
+                .then(() -> StepVerifier.create(downstreamGuard.guard(ServicesUrl.USER, Mono.just("ok")))
+                        .expectErrorMatches(DownstreamGuard::isRejected)
+                        .verify())
+                .thenCancel()
+                .verify();
+
+        StepVerifier.create(downstreamGuard.guard(ServicesUrl.USER, Mono.just("ok"))).expectNext("ok").verifyComplete();
+        assertThat(meterRegistry.counter("resilience4j.bulkhead.rejected.calls", "name", ServicesUrl.USER).count()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,49 @@
+package com.gftraining.microservice_product.unit_test.services;
+
+import com.gftraining.microservice_product.services.MappedFileInputStream;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MappedFileInputStreamTest {
+
+    @Test
+    @DisplayName("Given a file larger than a region, When reading it, Then every region is read in order")
+    void read_SeveralRegions() throws IOException {
+        Path path = new ClassPathResource("data-test.json").getFile().toPath();
+
+        try (InputStream input = new MappedFileInputStream(path, 100)) {
+            assertThat(input.readAllBytes()).isEqualTo(Files.readAllBytes(path));
+        }
+    }
+
+    @Test
+    @DisplayName("Given a file, When reading it byte by byte, Then the bytes are returned unsigned and then -1")
+    void read_SingleBytes(@TempDir Path tempDir) throws IOException {
+        Path path = Files.write(tempDir.resolve("bytes"), new byte[]{1, (byte) 0xff});
+
+        try (InputStream input = new MappedFileInputStream(path, 1)) {
+            assertThat(input.read()).isEqualTo(1);
+            assertThat(input.read()).isEqualTo(0xff);
+            assertThat(input.read()).isEqualTo(-1);
+        }
+    }
+
+    @Test
+    @DisplayName("Given an empty file, When reading it, Then the end of the stream is returned")
+    void read_EmptyFile(@TempDir Path tempDir) throws IOException {
+        Path path = Files.createFile(tempDir.resolve("empty"));
+
+        try (InputStream input = new MappedFileInputStream(path, 100)) {
+            assertThat(input.read(new byte[10], 0, 10)).isEqualTo(-1);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.gftraining.microservice_product.unit_test.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gftraining.microservice_product.configuration.NotificationsConfig;
+import com.gftraining.microservice_product.configuration.ServicesUrl;
+import com.gftraining.microservice_product.model.OutboxMessage;
+import com.gftraining.microservice_product.repositories.OutboxJdbcRepository;
+import com.gftraining.microservice_product.services.CatalogVersion;
+import com.gftraining.microservice_product.services.DownstreamGuard;
+import com.gftraining.microservice_product.services.ProductNotificationDispatcher;
+import com.gftraining.microservice_product.services.ProductService;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class ProductNotificationDispatcherTest {
+
+    @Mock
+    OutboxJdbcRepository outboxRepository;
+    MockWebServer mockWebServer;
+    CircuitBreakerRegistry circuitBreakerRegistry;
+    NotificationsConfig notificationsConfig;
+    SimpleMeterRegistry meterRegistry;
+    ProductNotificationDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+
+        ServicesUrl servicesUrl = new ServicesUrl();
+        servicesUrl.setCartUrl("http://localhost:" + mockWebServer.getPort());
+        servicesUrl.setUserUrl("http://localhost:" + mockWebServer.getPort());
+        circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+        meterRegistry = new SimpleMeterRegistry();
+        DownstreamGuard downstreamGuard = new DownstreamGuard(circuitBreakerRegistry, BulkheadRegistry.ofDefaults(), meterRegistry);
+        ProductService productService = new ProductService(null, null, null, servicesUrl, null, null, null, WebClient.create(),
+                null, downstreamGuard, new CatalogVersion(), meterRegistry);
+
+        notificationsConfig = new NotificationsConfig();
+        notificationsConfig.setInitialBackoff(Duration.ofSeconds(1));
+        notificationsConfig.setMaxAttempts(3);
+        dispatcher = new ProductNotificationDispatcher(outboxRepository, productService, notificationsConfig, new ObjectMapper(),
+                meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        mockWebServer.shutdown();
+    }
+
+    @Test
+    @DisplayName("Given several messages of the same product, When dispatching them, Then only the latest is sent with its idempotency key and all are settled")
+    void dispatch_SendsLatestMessagePerProductAndService() throws InterruptedException {
+        OutboxMessage oldUpdate = message(1L, OutboxMessage.Type.CART_UPDATE, "{\"id\":7,\"name\":\"Pelota\",\"description\":\"pelota\",\"price\":5.0}", 0);
+        OutboxMessage newUpdate = message(2L, OutboxMessage.Type.CART_UPDATE, "{\"id\":7,\"name\":\"Pelota\",\"description\":\"pelota\",\"price\":6.0}", 0);
+        OutboxMessage userDelete = message(3L, OutboxMessage.Type.USER_DELETE, null, 0);
+        given(outboxRepository.claimDue(any(), any(), anyInt())).willReturn(List.of(oldUpdate, newUpdate, userDelete));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(200));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(204));
+
+        assertThat(dispatcher.dispatch()).isEqualTo(3);
+
+        RecordedRequest first = mockWebServer.takeRequest(5, TimeUnit.SECONDS);
+        RecordedRequest second = mockWebServer.takeRequest(5, TimeUnit.SECONDS);
+        RecordedRequest patch = "PATCH".equals(first.getMethod()) ? first : second;
+        assertThat(patch.getPath()).isEqualTo("/products/7");
+        assertThat(patch.getHeader(ProductService.IDEMPOTENCY_KEY_HEADER)).isEqualTo("key-2");
+        assertThat(patch.getBody().readUtf8()).contains("\"price\":6.0");
+        assertThat(mockWebServer.getRequestCount()).isEqualTo(2);
+
+        verify(outboxRepository).deleteDelivered(newUpdate);
+        verify(outboxRepository).deleteDelivered(userDelete);
+        verify(outboxRepository, never()).deleteDelivered(oldUpdate);
+    }
+
+    @Test
+    @DisplayName("Given a message the service fails, When dispatching it, Then it is retried later with exponential backoff")
+    void dispatch_ReschedulesFailedMessageWithBackoff() {
+        given(outboxRepository.claimDue(any(), any(), anyInt())).willReturn(List.of(message(1L, OutboxMessage.Type.CART_DELETE, null, 1)));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(500));
+
+        Instant before = Instant.now();
+        dispatcher.dispatch();
+
+        verify(outboxRepository, never()).deleteDelivered(any());
+        verify(outboxRepository).reschedule(eq(List.of(1L)), eq(2), argThat(next ->
+                !next.isBefore(before.plusSeconds(2)) && next.isBefore(before.plusSeconds(10))));
+        assertThat(meterRegistry.get("product.downstream.retries").tag("target", "cart").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Given a message failing its last attempt, When dispatching it, Then it is not retried anymore")
+    void dispatch_GivesUpAfterMaxAttempts() {
+        given(outboxRepository.claimDue(any(), any(), anyInt())).willReturn(List.of(message(1L, OutboxMessage.Type.USER_DELETE, null, 2)));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(500));
+
+        dispatcher.dispatch();
+
+        verify(outboxRepository).reschedule(eq(List.of(1L)), eq(3), isNull());
+        assertThat(meterRegistry.get("product.outbox.abandoned").tag("target", "user").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Given the circuit of the cart open, When dispatching a cart message, Then the cart is not called and no attempt is spent")
+    void dispatch_WaitsWithoutAttemptWhileCircuitOpen() {
+        circuitBreakerRegistry.circuitBreaker(ServicesUrl.CART).transitionToOpenState();
+        given(outboxRepository.claimDue(any(), any(), anyInt())).willReturn(List.of(message(1L, OutboxMessage.Type.CART_DELETE, null, 1)));
+
+        dispatcher.dispatch();
+
+        assertThat(mockWebServer.getRequestCount()).isZero();
+        verify(outboxRepository).reschedule(eq(List.of(1L)), eq(1), any());
+    }
+
+    @Test
+    @DisplayName("Given the outbox failing, When polling it, Then the next polls back off and stop with the context")
+    void start_BacksOffFailedPollsUntilStopped() throws InterruptedException {
+        notificationsConfig.setPollInterval(Duration.ofMillis(10));
+        given(outboxRepository.claimDue(any(), any(), anyInt())).willThrow(new DataAccessResourceFailureException("Database is already closed"));
+
+        dispatcher.start();
+        Thread.sleep(500);
+        dispatcher.stop();
+
+        verify(outboxRepository, times(1)).claimDue(any(), any(), anyInt());
+    }
+
+    private static OutboxMessage message(Long id, OutboxMessage.Type type, String payload, int attempts) {
+        return new OutboxMessage(id, "key-" + id, type, 7L, payload, attempts, Instant.now());
+    }
+}
@@ -0,0 +1,104 @@
+package com.gftraining.microservice_product.unit_test.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gftraining.microservice_product.configuration.FeatureFlagsConfig;
+import com.gftraining.microservice_product.mappers.ProductMapper;
+import com.gftraining.microservice_product.model.OutboxMessage;
+import com.gftraining.microservice_product.model.ProductDTO;
+import com.gftraining.microservice_product.model.ProductEntity;
+import com.gftraining.microservice_product.repositories.OutboxJdbcRepository;
+import com.gftraining.microservice_product.services.ProductNotificationPublisher;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mapstruct.factory.Mappers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class ProductNotificationPublisherTest {
+
+    @Mock
+    OutboxJdbcRepository outboxRepository;
+    FeatureFlagsConfig featureFlags;
+    ProductNotificationPublisher publisher;
+
+    @BeforeEach
+    void setUp() {
+        featureFlags = new FeatureFlagsConfig();
+        featureFlags.setCallCartEnabled(true);
+        featureFlags.setCallUserEnabled(true);
+        publisher = new ProductNotificationPublisher(outboxRepository, featureFlags, new ObjectMapper(),
+                Mappers.getMapper(ProductMapper.class));
+    }
+
+    @Test
+    @DisplayName("Given an updated product, When publishing it, Then the outbox records the product as the cart expects it")
+    void cartProductUpdated_RecordsCartProduct() {
+        publisher.cartProductUpdated(1L, new ProductDTO("Pelota", "Juguetes", "pelota futbol", new BigDecimal("19.99"), 24));
+
+        verify(outboxRepository).insert(eq(OutboxMessage.Type.CART_UPDATE), eq(1L), contains("\"price\":19.99"));
+    }
+
+    @Test
+    @DisplayName("Given a product updated by the catalog sync, When publishing it, Then the outbox records it as the cart expects it")
+    void cartProductUpdated_Entity_RecordsCartProduct() {
+        publisher.cartProductUpdated(new ProductEntity(2L, "Pelota", "Juguetes", "pelota futbol", new BigDecimal("19.99"), 24));
+
+        verify(outboxRepository).insert(eq(OutboxMessage.Type.CART_UPDATE), eq(2L),
+                eq("{\"id\":2,\"name\":\"Pelota\",\"description\":\"pelota futbol\",\"price\":19.99}"));
+    }
+
+    @Test
+    @DisplayName("Given a deleted product, When publishing it, Then the outbox records a delete for carts and users")
+    void productDeleted_RecordsCartAndUserDeletes() {
+        publisher.cartProductDeleted(1L);
+        publisher.userProductDeleted(1L);
+
+        verify(outboxRepository).insert(eq(OutboxMessage.Type.CART_DELETE), eq(1L), isNull());
+        verify(outboxRepository).insert(eq(OutboxMessage.Type.USER_DELETE), eq(1L), isNull());
+    }
+
+    @Test
+    @DisplayName("Given the outbox unavailable, When publishing a change, Then a 503 jumps so the change is not committed without it")
+    void publish_OutboxUnavailable_ServiceUnavailable() {
+        doThrow(new DataAccessResourceFailureException("Connection is closed"))
+                .when(outboxRepository).insert(any(), anyLong(), any());
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class, () -> publisher.cartProductDeleted(1L));
+
+        assertThat(exception.getStatus()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    @Test
+    @DisplayName("Given the cart and user flags disabled, When publishing changes, Then nothing is recorded")
+    void publish_DisabledByFeatureFlags() {
+        featureFlags.setCallCartEnabled(false);
+        featureFlags.setCallUserEnabled(false);
+
+        publisher.cartProductUpdated(1L, new ProductDTO("Pelota", "Juguetes", "pelota futbol", BigDecimal.TEN, 24));
+        publisher.cartProductDeleted(1L);
+        publisher.userProductDeleted(1L);
+
+        verify(outboxRepository, never()).insert(any(), anyLong(), any());
+    }
+}
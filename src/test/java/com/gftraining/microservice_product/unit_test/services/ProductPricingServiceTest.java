@@ -0,0 +1,94 @@
+package com.gftraining.microservice_product.unit_test.services;
+
+import com.gftraining.microservice_product.configuration.CategoriesConfig;
+import com.gftraining.microservice_product.model.ProductEntity;
+import com.gftraining.microservice_product.services.ProductPricingService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class ProductPricingServiceTest {
+
+    CategoriesConfig categoriesConfig;
+    ProductPricingService pricingService;
+
+    final ProductEntity productEntity = new ProductEntity(1L, "Pelota", "Juguetes", "pelota futbol", new BigDecimal("19.99"), 24);
+
+    @BeforeEach
+    void setUp() {
+        categoriesConfig = spy(new CategoriesConfig());
+        categoriesConfig.setCategories(Map.of("Juguetes", 20, "Otros", 0));
+        pricingService = new ProductPricingService(categoriesConfig);
+    }
+
+    @Test
+    @DisplayName("Given a product of a category with discount, When calculating the final price, Then the discount is rounded half up to 2 decimals")
+    void calculateFinalPrice() {
+        assertThat(pricingService.calculateFinalPrice(productEntity)).isEqualTo(new BigDecimal("15.99"));
+    }
+
+    @Test
+    @DisplayName("Given a product of an unknown category, When calculating the final price, Then no discount is applied")
+    void calculateFinalPrice_UnknownCategory() {
+        ProductEntity product = new ProductEntity(2L, "Mesa", "Muebles", "mesa de madera", new BigDecimal("80.5"), 2);
+
+        assertThat(pricingService.calculateFinalPrice(product)).isEqualTo(new BigDecimal("80.50"));
+    }
+
+    @Test
+    @DisplayName("Given a product already priced, When getting its final price again, Then the categories are not looked up again")
+    void getFinalPrice_UsesPriceTable() {
+        pricingService.updateFinalPrice(productEntity);
+        clearInvocations(categoriesConfig);
+
+        assertThat(pricingService.getFinalPrice(productEntity)).isEqualTo(new BigDecimal("15.99"));
+        assertThat(pricingService.getFinalPrice(productEntity)).isEqualTo(new BigDecimal("15.99"));
+        verify(categoriesConfig, times(2)).getCategories();
+    }
+
+    @Test
+    @DisplayName("Given a product whose price changed, When getting its final price, Then it is calculated again")
+    void getFinalPrice_PriceChanged() {
+        pricingService.getFinalPrice(productEntity);
+        ProductEntity updatedProduct = new ProductEntity(1L, "Pelota", "Juguetes", "pelota futbol", new BigDecimal("10.00"), 24);
+
+        assertThat(pricingService.getFinalPrice(updatedProduct)).isEqualTo(new BigDecimal("8.00"));
+    }
+
+    @Test
+    @DisplayName("Given new category discounts, When getting a final price, Then the price table is recalculated")
+    void getFinalPrice_DiscountsChanged() {
+        pricingService.getFinalPrice(productEntity);
+        categoriesConfig.setCategories(Map.of("Juguetes", 50));
+
+        assertThat(pricingService.getFinalPrice(productEntity)).isEqualTo(new BigDecimal("9.99"));
+    }
+
+    @Test
+    @DisplayName("Given a transaction, When clearing the price table after commit, Then the prices are kept until it commits")
+    void clearAfterCommit() {
+        pricingService.updateFinalPrice(productEntity);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            pricingService.clearAfterCommit();
+            clearInvocations(categoriesConfig);
+            pricingService.getFinalPrice(productEntity);
+            verify(categoriesConfig, times(1)).getCategories();
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            clearInvocations(categoriesConfig);
+            pricingService.getFinalPrice(productEntity);
+            verify(categoriesConfig, times(2)).getCategories();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+}
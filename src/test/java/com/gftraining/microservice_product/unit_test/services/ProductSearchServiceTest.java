@@ -0,0 +1,86 @@
+package com.gftraining.microservice_product.unit_test.services;
+
+import com.gftraining.microservice_product.model.ProductEntity;
+import com.gftraining.microservice_product.repositories.ProductJdbcRepository;
+import com.gftraining.microservice_product.services.ProductSearchService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+@ExtendWith(MockitoExtension.class)
+class ProductSearchServiceTest {
+
+    @Mock
+    ProductJdbcRepository jdbcRepository;
+
+    ProductSearchService service;
+
+    final List<ProductEntity> catalog = List.of(
+            new ProductEntity(1L, "Pelota", "Juguetes", "Pelota del Barça", new BigDecimal("10.00"), 4),
+            new ProductEntity(2L, "Pelota de tenis", "Deportes", "Bote de tres pelotas", new BigDecimal("5.00"), 10),
+            new ProductEntity(3L, "Raqueta", "Deportes", "Raqueta de tenis para pelota blanda", new BigDecimal("45.00"), 3),
+            new ProductEntity(4L, "Peluche", "Juguetes", "Oso de peluche", new BigDecimal("15.00"), 8));
+
+    @BeforeEach
+    void setUp() {
+        doAnswer(invocation -> {
+            catalog.forEach(invocation.<Consumer<ProductEntity>>getArgument(0));
+            return null;
+        }).when(jdbcRepository).forEach(any());
+        service = new ProductSearchService(jdbcRepository);
+        service.rebuild();
+    }
+
+    @Test
+    @DisplayName("Given a keyword, When searching, Then the products with it in the name rank before the ones with it in the description")
+    void search_RanksNameMatchesFirst() {
+        assertThat(service.search("pelota", false, 10)).containsExactly(1L, 2L, 3L);
+    }
+
+    @Test
+    @DisplayName("Given several keywords, When searching, Then only the products containing all of them are returned")
+    void search_MatchesAllTerms() {
+        assertThat(service.search("tenis pelota", false, 10)).containsExactly(2L, 3L);
+    }
+
+    @Test
+    @DisplayName("Given a keyword with other case and accents, When searching, Then it matches the normalized text")
+    void search_Normalizes() {
+        assertThat(service.search("BARCA", false, 10)).containsExactly(1L);
+    }
+
+    @Test
+    @DisplayName("Given the start of a word and prefix, When searching, Then every product with a word starting with it is returned")
+    void search_Prefix() {
+        assertThat(service.search("pel", true, 10)).containsExactly(1L, 4L, 2L, 3L);
+        assertThat(service.search("pel", false, 10)).isEmpty();
+        assertThat(service.search("oso pel", true, 10)).containsExactly(4L);
+    }
+
+    @Test
+    @DisplayName("Given a limit, When searching, Then only the best ranked products are returned")
+    void search_Limit() {
+        assertThat(service.search("pelota", false, 2)).containsExactly(1L, 2L);
+    }
+
+    @Test
+    @DisplayName("Given a product renamed and another one deleted, When searching, Then the index reflects both changes")
+    void indexAndRemove() {
+        service.index(new ProductEntity(4L, "Balón", "Juguetes", "Pelota de playa", new BigDecimal("15.00"), 8));
+        service.remove(1L);
+
+        assertThat(service.search("peluche", false, 10)).isEmpty();
+        assertThat(service.search("pelota", false, 10)).containsExactly(2L, 3L, 4L);
+    }
+}
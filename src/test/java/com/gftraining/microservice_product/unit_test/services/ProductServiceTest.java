@@ -3,28 +3,52 @@ package com.gftraining.microservice_product.unit_test.services;
 
 import com.gftraining.microservice_product.configuration.CategoriesConfig;
 import com.gftraining.microservice_product.configuration.ServicesUrl;
+import com.gftraining.microservice_product.mappers.ProductMapper;
+import com.gftraining.microservice_product.model.CartProductDTO;
+import com.gftraining.microservice_product.model.CategoryStatsDTO;
 import com.gftraining.microservice_product.model.ProductDTO;
 import com.gftraining.microservice_product.model.ProductEntity;
+import com.gftraining.microservice_product.model.ProductVersionDTO;
+import com.gftraining.microservice_product.model.ProductsByIdDTO;
+import com.gftraining.microservice_product.exception.StockReservationException;
+import com.gftraining.microservice_product.model.StockReservationDTO;
+import com.gftraining.microservice_product.model.StockReservationResultDTO;
+import com.gftraining.microservice_product.repositories.ProductJdbcRepository;
 import com.gftraining.microservice_product.repositories.ProductRepository;
+import com.gftraining.microservice_product.services.CatalogVersion;
+import com.gftraining.microservice_product.services.DownstreamGuard;
+import com.gftraining.microservice_product.services.ProductNotificationPublisher;
+import com.gftraining.microservice_product.services.ProductPricingService;
+import com.gftraining.microservice_product.services.ProductSearchService;
 import com.gftraining.microservice_product.services.ProductService;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import okhttp3.mockwebserver.RecordedRequest;
 import org.json.JSONObject;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
+import org.mapstruct.factory.Mappers;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.modelmapper.ModelMapper;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
 import javax.persistence.EntityNotFoundException;
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.*;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -43,8 +67,24 @@ class ProductServiceTest {
     ProductRepository repository;
     @Mock
     CategoriesConfig categoriesConfig;
+    @Spy
+    ProductMapper productMapper = Mappers.getMapper(ProductMapper.class);
+    @Mock
+    ProductPricingService pricingService;
+    @Mock
+    ProductJdbcRepository jdbcRepository;
     @Mock
-    ModelMapper modelMapper;
+    ProductSearchService searchService;
+    @Mock
+    ProductNotificationPublisher notificationPublisher;
+    @Spy
+    WebClient webClient = WebClient.create();
+    @Spy
+    DownstreamGuard downstreamGuard = new DownstreamGuard(CircuitBreakerRegistry.ofDefaults(), BulkheadRegistry.ofDefaults(), new SimpleMeterRegistry());
+    @Spy
+    CatalogVersion catalogVersion = new CatalogVersion();
+    @Spy
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
     final List<ProductEntity> productList = Arrays.asList(
             new ProductEntity(1L, "Playmobil", "Juguetes", "juguetes de plástico", new BigDecimal("40.00"), 100),
             new ProductEntity(2L, "Espaguetis", "Comida", "pasta italiana elaborada con harina de grano duro y agua", new BigDecimal("20.00"), 220)
@@ -55,6 +95,7 @@ class ProductServiceTest {
     );
     final ProductEntity productEntity = new ProductEntity(1L, "Pelota", "Juguetes", "pelota futbol", new BigDecimal("19.99"), 24);
     final ProductDTO productDTO = new ProductDTO(productEntity.getName(), productEntity.getCategory(), productEntity.getDescription(), productEntity.getPrice(), productEntity.getStock());
+    final CartProductDTO cartProductDTO = new CartProductDTO(productEntity.getId(), productEntity.getName(), productEntity.getDescription(), 19.99);
     final Map<String, Integer> cartsChanged = new HashMap<>() {{
         put("cartsChanged", 1);
     }};
@@ -78,6 +119,56 @@ class ProductServiceTest {
         given(repository.findAll()).willReturn(productList);
 
         assertThat(service.getAllProducts()).isEqualTo(productList);
+        assertThat(meterRegistry.get("product.repository.rows").tag("query", "findAll").summary().totalAmount()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Given a category, a price range and a sort, When calling getProducts, Then the repository filters and sorts them")
+    void getProducts() {
+        given(repository.findAll(ArgumentMatchers.<Specification<ProductEntity>>any(), eq(Sort.by(Sort.Direction.DESC, "price").and(Sort.by("id")))))
+                .willReturn(productList);
+
+        assertThat(service.getProducts("Juguetes", new BigDecimal("10"), new BigDecimal("50"), "price,desc")).isEqualTo(productList);
+    }
+
+    @Test
+    @DisplayName("Given a sort by a field not allowed, When calling getProducts, Then a bad request error jumps")
+    void getProducts_SortNotAllowed() {
+        Assertions.assertThrows(ResponseStatusException.class, () -> service.getProducts(null, null, null, "description"));
+        Assertions.assertThrows(ResponseStatusException.class, () -> service.getProducts(null, null, null, "price,up"));
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    @DisplayName("Given a min price greater than the max price, When calling getProducts, Then a bad request error jumps")
+    void getProducts_InvalidPriceRange() {
+        Assertions.assertThrows(ResponseStatusException.class,
+                () -> service.getProducts(null, new BigDecimal("50"), new BigDecimal("10"), null));
+    }
+
+    @Test
+    @DisplayName("When calling getCategoryStats, Then the discounts of the categories are sent to the aggregation")
+    void getCategoryStats() {
+        List<CategoryStatsDTO> stats = List.of(new CategoryStatsDTO("Juguetes", 1, 100,
+                new BigDecimal("32.00"), new BigDecimal("32.00"), new BigDecimal("32.00")));
+        given(categoriesConfig.getCategories()).willReturn(Map.of("Juguetes", 20));
+        given(jdbcRepository.getCategoryStats(Map.of("Juguetes", 20))).willReturn(stats);
+
+        assertThat(service.getCategoryStats()).isEqualTo(stats);
+    }
+
+    @Test
+    @DisplayName("Given an after id and a limit, When calling getProductsPage, Then the repository is asked for that page only")
+    void getProductsPage() {
+        given(repository.findAllByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, 2))).willReturn(productList);
+
+        assertThat(service.getProductsPage(0L, 2)).isEqualTo(productList);
+    }
+
+    @Test
+    @DisplayName("Given a limit out of range, When calling getProductsPage, Then throw an error")
+    void getProductsPage_LimitOutOfRange() {
+        Assertions.assertThrows(ResponseStatusException.class, () -> service.getProductsPage(0L, 0));
     }
 
     @Test
@@ -88,24 +179,102 @@ class ProductServiceTest {
         assertThat(service.getProductByName("Playmobil")).isEqualTo(productListSameName);
     }
 
+    @Test
+    @DisplayName("Given a list of ids, When finding them on the repository, Then the products found and the missing ids are returned")
+    void getProductsById() {
+        given(repository.findAllById(List.of(2L, 9L, 1L))).willReturn(productList);
+
+        ProductsByIdDTO result = service.getProductsById(List.of(2L, 9L, 1L, 2L));
+
+        assertThat(result.getProducts()).containsExactly(productList.get(1), productList.get(0));
+        assertThat(result.getMissingIds()).containsExactly(9L);
+    }
+
+    @Test
+    @DisplayName("Given more ids than a chunk, When finding them on the repository, Then one query is done per chunk")
+    void getProductsById_Chunks() {
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= ProductService.IDS_CHUNK_SIZE + 1; id++) ids.add(id);
+
+        ProductsByIdDTO result = service.getProductsById(ids);
+
+        verify(repository, times(2)).findAllById(any());
+        assertThat(result.getMissingIds()).hasSize(ProductService.IDS_CHUNK_SIZE + 1);
+    }
+
+    @Test
+    @DisplayName("Given a query, When searching products, Then the products are returned in the ranking order")
+    void searchProducts() {
+        given(searchService.search("pasta", true, 10)).willReturn(List.of(2L, 1L));
+        given(repository.findAllById(List.of(2L, 1L))).willReturn(productList);
+
+        assertThat(service.searchProducts("pasta", true, 10)).containsExactly(productList.get(1), productList.get(0));
+    }
+
+    @Test
+    @DisplayName("Given a limit out of range, When searching products, Then a bad request error jumps")
+    void searchProducts_LimitOutOfRange() {
+        Assertions.assertThrows(ResponseStatusException.class,
+                () -> service.searchProducts("pasta", false, ProductService.MAX_SEARCH_LIMIT + 1));
+        verifyNoInteractions(searchService);
+    }
+
     @Test
     @DisplayName("Given a product id, When finding a product on the repository, Then the product is returned")
     void getProductById() {
-        given(repository.findById(anyLong())).willReturn(Optional.of(productEntity));
+        given(repository.findCachedById(anyLong())).willReturn(Optional.of(productEntity));
 
         assertThat(service.getProductById(1L)).usingRecursiveComparison().isEqualTo(productEntity);
     }
 
+    @Test
+    @DisplayName("Given a cached product, When getting it by id, Then the final price is set on a copy and not on the cached product")
+    void getProductById_DoesNotChangeCachedProduct() {
+        ProductEntity cached = new ProductEntity(1L, "Pelota", "Juguetes", "pelota de futbol", new BigDecimal("19.99"), 24);
+        given(repository.findCachedById(1L)).willReturn(Optional.of(cached));
+        given(pricingService.getFinalPrice(cached)).willReturn(new BigDecimal("15.99"));
+
+        ProductEntity product = service.getProductById(1L);
+
+        assertThat(product).isNotSameAs(cached);
+        assertThat(product.getFinalPrice()).isEqualTo(new BigDecimal("15.99"));
+        assertThat(cached.getFinalPrice()).isNull();
+    }
+
+    @Test
+    @DisplayName("Given a cached product, When getting its version, Then the version and last modification are returned without pricing it")
+    void getProductVersion() {
+        ProductEntity cached = new ProductEntity(1L, "Pelota", "Juguetes", "pelota de futbol", new BigDecimal("19.99"), 24,
+                3, Instant.parse("2023-05-04T10:15:30Z"));
+        given(repository.findCachedById(1L)).willReturn(Optional.of(cached));
+
+        assertThat(service.getProductVersion(1L))
+                .isEqualTo(new ProductVersionDTO(1L, 3, Instant.parse("2023-05-04T10:15:30Z")));
+        verifyNoInteractions(pricingService);
+    }
+
+    @Test
+    @DisplayName("Given a missing product, When getting its version, Then throw an error")
+    void getProductVersion_NotFound() {
+        given(repository.findCachedById(1L)).willReturn(Optional.empty());
+
+        Assertions.assertThrows(EntityNotFoundException.class, () -> service.getProductVersion(1L));
+    }
+
 
     @Test
     @DisplayName("Given a Product, When the product is saved, Then verify if repository is called and if the id is 1")
     void putProductById() {
         given(categoriesConfig.getCategories()).willReturn(Map.of("Juguetes", 20));
-        given(repository.findById(anyLong())).willReturn(Optional.of(productEntity));
-        given(modelMapper.map(productDTO, ProductEntity.class)).willReturn(productEntity);
+        given(repository.findCachedById(anyLong())).willReturn(Optional.of(productEntity));
+        given(repository.save(any())).willReturn(productEntity);
 
         service.putProductById(productDTO, 1L);
-        verify(repository).save(any());
+        verify(repository).save(new ProductEntity(1L, productDTO.getName(), productDTO.getCategory(),
+                productDTO.getDescription(), productDTO.getPrice(), productDTO.getStock()));
+        verify(notificationPublisher).cartProductUpdated(1L, productDTO);
+        verify(pricingService).updateFinalPrice(productEntity);
+        verify(searchService).index(productEntity);
     }
 
     @Test
@@ -125,8 +294,8 @@ class ProductServiceTest {
 
     @Order(1)
     @Test
-    @DisplayName("given a product id, when calling cart api to update products, then returns Ok and number of carts affected.")
-    void patchCartProducts_returnCartsChanged() throws InterruptedException {
+    @DisplayName("given a cart product, when calling cart api to update it, then returns Ok and number of carts affected.")
+    void patchCartProduct_returnCartsChanged() throws InterruptedException {
         when(servicesUrl.getCartUrl()).thenReturn("htpp://localhost:" + mockWebServer.getPort());
 
         mockWebServer.enqueue(new MockResponse()
@@ -134,7 +303,7 @@ class ProductServiceTest {
                 .setBody(String.valueOf(new JSONObject(cartsChanged)))
                 .addHeader("Content-Type", "application/json"));
 
-        Mono<Object> cartsMono = service.patchCartProducts(productDTO, productEntity.getId());
+        Mono<Object> cartsMono = service.patchCartProduct(cartProductDTO, "key-1");
 
         StepVerifier.create(cartsMono)
                 .expectNext(cartsChanged)
@@ -142,20 +311,18 @@ class ProductServiceTest {
 
         RecordedRequest request = mockWebServer.takeRequest();
         assertThat(request.getMethod()).isEqualTo("PATCH");
+        assertThat(request.getHeader(ProductService.IDEMPOTENCY_KEY_HEADER)).isEqualTo("key-1");
 
     }
 
     @Test()
-    @DisplayName("given a product id, when calling cart api to update product, then returns error 500.")
-    void patchCartProducts_returnSError500() {
+    @DisplayName("given a cart product, when calling cart api to update it, then returns error 500 without retrying.")
+    void patchCartProduct_returnSError500() {
         when(servicesUrl.getCartUrl()).thenReturn("htpp://localhost:" + mockWebServer.getPort());
 
-        mockWebServer.enqueue(new MockResponse().setResponseCode(500));
-        mockWebServer.enqueue(new MockResponse().setResponseCode(500));
-        mockWebServer.enqueue(new MockResponse().setResponseCode(500));
         mockWebServer.enqueue(new MockResponse().setResponseCode(500));
 
-        Mono<Object> cartsMono = service.patchCartProducts(productDTO, 1L);
+        Mono<Object> cartsMono = service.patchCartProduct(cartProductDTO, "key-1");
 
         StepVerifier.create(cartsMono)
                 .expectError()
@@ -166,32 +333,79 @@ class ProductServiceTest {
     @Test
     @DisplayName("Given an id and an units, When calling updateStock, Then verify if repository is called")
     void updateStock() {
-        given(repository.findById(1L)).willReturn(Optional.of(productEntity));
+        given(repository.decrementStock(1L, 5)).willReturn(1);
 
         service.updateStock(5, 1L);
 
-        verify(repository, times(1)).findById(anyLong());
-        verify(repository, times(1)).save(any());
+        verify(repository, times(1)).decrementStock(1L, 5);
+        verify(repository, never()).findCachedById(anyLong());
+        verify(repository, never()).save(any());
+        assertThat(meterRegistry.get("product.stock.decrements").tag("outcome", "success").counter().count()).isEqualTo(1);
     }
 
     @Test
     @DisplayName("Given an id and an units, When calling updateStock, Then verify if exception jumps")
     void updateStock_StockLessThan0() {
-        given(repository.findById(1L)).willReturn(Optional.of(productEntity));
+        given(repository.decrementStock(1L, 500)).willReturn(0);
+        given(repository.existsById(1L)).willReturn(true);
+
+        ResponseStatusException exception = Assertions.assertThrows(ResponseStatusException.class, () -> service.updateStock(500, 1L));
+        assertThat(exception.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(meterRegistry.get("product.stock.decrements").tag("outcome", "rejected").counter().count()).isEqualTo(1);
+    }
 
-        Assertions.assertThrows(Exception.class, () -> service.updateStock(500, 1L));
+    @Test
+    @DisplayName("Given negative units, When calling updateStock, Then the exception jumps before calling the repository")
+    void updateStock_NegativeUnits() {
+        Assertions.assertThrows(ResponseStatusException.class, () -> service.updateStock(-1, 1L));
+
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    @DisplayName("Given a wrong id, When calling updateStock, Then the product is not found")
+    void updateStock_NotFoundException() {
+        given(repository.decrementStock(9999L, 5)).willReturn(0);
+
+        Assertions.assertThrows(EntityNotFoundException.class, () -> service.updateStock(5, 9999L));
+    }
+
+    @Test
+    @DisplayName("Given a cart with enough stock, When reserving its stock, Then every line is reserved in one batch")
+    void reserveStock() {
+        List<StockReservationDTO> lines = List.of(new StockReservationDTO(1L, 2), new StockReservationDTO(2L, 3));
+        given(jdbcRepository.decrementStocks(lines)).willReturn(new int[]{1, 1});
+
+        assertThat(service.reserveStock(lines)).containsExactly(
+                new StockReservationResultDTO(1L, 2, true), new StockReservationResultDTO(2L, 3, true));
+        verify(jdbcRepository, times(1)).decrementStocks(lines);
+    }
+
+    @Test
+    @DisplayName("Given a cart with a line without stock, When reserving its stock, Then the exception carries every line result")
+    void reserveStock_NotEnoughStock() {
+        List<StockReservationDTO> lines = List.of(new StockReservationDTO(1L, 2), new StockReservationDTO(2L, 300));
+        given(jdbcRepository.decrementStocks(lines)).willReturn(new int[]{1, 0});
+
+        StockReservationException exception = Assertions.assertThrows(StockReservationException.class, () -> service.reserveStock(lines));
+        assertThat(exception.getResults()).containsExactly(
+                new StockReservationResultDTO(1L, 2, true), new StockReservationResultDTO(2L, 300, false));
     }
 
     @Test
     @DisplayName("given a product id, when delete product by id, then the product is deleted")
     void deleteProductById() {
         //given
-        given(repository.findById(anyLong())).willReturn(Optional.of(productEntity));
+        given(repository.findCachedById(anyLong())).willReturn(Optional.of(productEntity));
         //when
         service.deleteProductById(1L);
         //then
-        verify(repository).findById(anyLong());
+        verify(repository).findCachedById(anyLong());
         verify(repository).deleteById(anyLong());
+        verify(notificationPublisher).cartProductDeleted(1L);
+        verify(notificationPublisher).userProductDeleted(1L);
+        verify(pricingService).evict(1L);
+        verify(searchService).remove(1L);
     }
 
     @Test
@@ -202,7 +416,7 @@ class ProductServiceTest {
 
     @Test
     @DisplayName("given a product id, when calling cart api to delete product, then returns Ok and number of carts affected.")
-    void deleteCartProducts_returnCartsChanged() throws InterruptedException {
+    void deleteCartProduct_returnCartsChanged() throws InterruptedException {
         Long productId = 7L;
         when(servicesUrl.getCartUrl()).thenReturn("htpp://localhost:" + mockWebServer.getPort());
 
@@ -211,7 +425,7 @@ class ProductServiceTest {
                 .setBody(String.valueOf(new JSONObject(cartsChanged)))
                 .addHeader("Content-Type", "application/json"));
 
-        Mono<Object> cartsMono = service.deleteCartProducts(productId);
+        Mono<Object> cartsMono = service.deleteCartProduct(productId, "key-1");
 
         StepVerifier.create(cartsMono)
                 .expectNext(cartsChanged)
@@ -221,17 +435,14 @@ class ProductServiceTest {
     }
 
     @Test()
-    @DisplayName("given a product id, when calling cart api to delete product, then returns error 500.")
-    void deleteCartProducts_returnSError500() {
+    @DisplayName("given a product id, when calling cart api to delete product, then returns error 500 without retrying.")
+    void deleteCartProduct_returnSError500() {
         Long productId = 7L;
         when(servicesUrl.getCartUrl()).thenReturn("htpp://localhost:" + mockWebServer.getPort());
 
-        mockWebServer.enqueue(new MockResponse().setResponseCode(500));
-        mockWebServer.enqueue(new MockResponse().setResponseCode(500));
-        mockWebServer.enqueue(new MockResponse().setResponseCode(500));
         mockWebServer.enqueue(new MockResponse().setResponseCode(500));
 
-        Mono<Object> cartsMono = service.deleteCartProducts(productId);
+        Mono<Object> cartsMono = service.deleteCartProduct(productId, "key-1");
 
         StepVerifier.create(cartsMono)
                 .expectError()
@@ -240,14 +451,14 @@ class ProductServiceTest {
 
     @Test
     @DisplayName("given a product id, when calling user api to delete favorite product, then returns 204 No Content.")
-    void deleteUserProducts_returns204NoContent() throws InterruptedException {
+    void deleteUserProduct_returns204NoContent() throws InterruptedException {
         Long productId = 7L;
         when(servicesUrl.getUserUrl()).thenReturn("htpp://localhost:" + mockWebServer.getPort());
 
         mockWebServer.enqueue(new MockResponse()
                 .setResponseCode(204));
 
-        Mono<HttpStatus> userDeleteMono = service.deleteUserProducts(productId);
+        Mono<HttpStatus> userDeleteMono = service.deleteUserProduct(productId, "key-1");
 
         StepVerifier.create(userDeleteMono)
                 .expectComplete()
@@ -258,17 +469,14 @@ class ProductServiceTest {
     }
 
     @Test()
-    @DisplayName("given a product id, when calling user api to delete product, then returns error 500.")
-    void deleteUserProducts_returnsError500() {
+    @DisplayName("given a product id, when calling user api to delete product, then returns error 500 without retrying.")
+    void deleteUserProduct_returnsError500() {
         Long productId = 7L;
         when(servicesUrl.getUserUrl()).thenReturn("htpp://localhost:" + mockWebServer.getPort());
 
-        mockWebServer.enqueue(new MockResponse().setResponseCode(500));
-        mockWebServer.enqueue(new MockResponse().setResponseCode(500));
-        mockWebServer.enqueue(new MockResponse().setResponseCode(500));
         mockWebServer.enqueue(new MockResponse().setResponseCode(500));
 
-        Mono<HttpStatus> userDeleteMono = service.deleteUserProducts(productId);
+        Mono<HttpStatus> userDeleteMono = service.deleteUserProduct(productId, "key-1");
 
         StepVerifier.create(userDeleteMono)
                 .expectError()
@@ -280,11 +488,11 @@ class ProductServiceTest {
     @DisplayName("Given a product id, When finding a product on the repository, Then the product is returned")
     void saveProduct() {
         given(categoriesConfig.getCategories()).willReturn(Map.of("Juguetes", 20));
-        given(modelMapper.map(productDTO, ProductEntity.class)).willReturn(productEntity);
         given(repository.save(any())).willReturn(productEntity);
         Long id = service.saveProduct(productDTO);
 
         verify(repository).save(any());
+        verify(searchService).index(productEntity);
         assertThat(id).isEqualTo(1L);
     }
 
@@ -293,14 +501,4 @@ class ProductServiceTest {
     void saveProduct_returnsCategoryError() {
         Assertions.assertThrows(EntityNotFoundException.class, () -> service.saveProduct(productDTO));
     }
-
-    @Test
-    @DisplayName("Given a path, When calling updateProductsFromJson, Then verify if repository is called")
-    void updateDatabase() throws IOException {
-        //Put your own path
-        service.updateProductsFromJson("C:\\Files\\data.json");
-
-        verify(repository).deleteAll();
-        verify(repository).saveAll(any());
-    }
 }
@@ -0,0 +1,94 @@
+package com.gftraining.microservice_product.unit_test.services;
+
+import com.gftraining.microservice_product.configuration.CategoriesConfig;
+import com.gftraining.microservice_product.model.ProductEntity;
+import com.gftraining.microservice_product.repositories.ProductReactiveRepository;
+import com.gftraining.microservice_product.services.ProductPricingService;
+import com.gftraining.microservice_product.services.ReactiveProductService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import javax.persistence.EntityNotFoundException;
+import java.math.BigDecimal;
+import java.util.Map;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@ExtendWith(MockitoExtension.class)
+class ReactiveProductServiceTest {
+
+    @Mock
+    ProductReactiveRepository reactiveRepository;
+    ReactiveProductService service;
+
+    final ProductEntity productEntity = new ProductEntity(1L, "Pelota", "Juguetes", "pelota futbol", new BigDecimal("19.99"), 24);
+    final ProductEntity otherProductEntity = new ProductEntity(2L, "Wonder", "Libros", "Author: R.J. Palacio", new BigDecimal("12.45"), 90);
+
+    @BeforeEach
+    void setUp() {
+        CategoriesConfig categoriesConfig = new CategoriesConfig();
+        categoriesConfig.setCategories(Map.of("Juguetes", 20, "Libros", 15));
+        service = new ReactiveProductService(reactiveRepository, new ProductPricingService(categoriesConfig));
+    }
+
+    @Test
+    @DisplayName("When streaming all products, Then every product is emitted with its final price")
+    void getAllProducts() {
+        given(reactiveRepository.streamAll()).willReturn(Flux.just(productEntity, otherProductEntity));
+
+        StepVerifier.create(service.getAllProducts())
+                .expectNextMatches(product -> product.getFinalPrice().equals(new BigDecimal("15.99")))
+                .expectNextMatches(product -> product.getFinalPrice().equals(new BigDecimal("10.58")))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Given a limit out of range, When getting a page, Then the repository is not queried and a bad request is emitted")
+    void getProductsPage_InvalidLimit() {
+        StepVerifier.create(service.getProductsPage(0L, 0))
+                .expectError(ResponseStatusException.class)
+                .verify();
+
+        verifyNoInteractions(reactiveRepository);
+    }
+
+    @Test
+    @DisplayName("Given an id and a limit, When getting a page, Then the products after the id are emitted")
+    void getProductsPage() {
+        given(reactiveRepository.findAllByIdGreaterThanOrderByIdAsc(1L, PageRequest.of(0, 10))).willReturn(Flux.just(otherProductEntity));
+
+        StepVerifier.create(service.getProductsPage(1L, 10))
+                .expectNext(otherProductEntity)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Given a missing id, When getting the product, Then not found is emitted")
+    void getProductById_NotFound() {
+        given(reactiveRepository.findById(99L)).willReturn(Mono.empty());
+
+        StepVerifier.create(service.getProductById(99L))
+                .expectError(EntityNotFoundException.class)
+                .verify();
+    }
+
+    @Test
+    @DisplayName("Given a name no product has, When getting the products by name, Then not found is emitted")
+    void getProductByName_NotFound() {
+        given(reactiveRepository.findAllByName("Pepe")).willReturn(Flux.empty());
+
+        StepVerifier.create(service.getProductByName("Pepe"))
+                .expectError(EntityNotFoundException.class)
+                .verify();
+    }
+}
@@ -1,3 +1,5 @@
+drop table if exists Product_Outbox;
+drop table if exists Product_Sync_Match;
 drop table if exists Product;
 drop table if exists Category;
 
@@ -16,11 +18,40 @@ create table Product(
     description varchar(255) not null,
     price decimal(10,2) not null,
     stock int not null,
+    version int default 0 not null,
+    last_modified timestamp default current_timestamp not null,
 
     primary key (id),
     foreign key (category) references Category(name) on delete cascade
 );
 
+create index idx_product_name on Product(name);
+create index idx_product_category on Product(category);
+create index idx_product_category_price on Product(category, price);
+
+create table Product_Outbox(
+    id bigInt not null AUTO_INCREMENT,
+    idempotency_key varchar(36) not null unique,
+    type varchar(20) not null,
+    product_id bigInt not null,
+    payload varchar(1000),
+    attempts int default 0 not null,
+    next_attempt_at timestamp,
+    created_at timestamp not null,
+
+    primary key (id)
+);
+
+create index idx_product_outbox_next_attempt_at on Product_Outbox(next_attempt_at);
+create index idx_product_outbox_product_id on Product_Outbox(product_id);
+
+create table Product_Sync_Match(
+    sync_id varchar(36) not null,
+    product_id bigInt not null,
+
+    primary key (sync_id, product_id)
+);
+
 
 insert into Category (name, discount) values ('Juguetes', 20);
 insert into Category (name, discount) values ('Libros', 15);